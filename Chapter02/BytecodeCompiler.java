@@ -0,0 +1,511 @@
+/*
+    이 모듈은 컴파일된 표현식 트리를 JVM 바이트코드로 바꾼다.
+    만들어진 클래스는 숨겨진 클래스(hidden class)로 정의되므로
+    Formula 객체를 더 이상 참조하지 않으면 클래스도 함께 언로드될 수 있다.
+ */
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+
+class BytecodeCompiler
+{
+    // 생성되는 메소드 코드의 최대 크기 (JVM 제한)
+    static final int MAX_CODE = 65535;
+
+    // 사용하는 JVM 명령어
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int DALOAD = 0x31;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int LDC2_W = 0x14;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DNEG = 0x77;
+    static final int DCMPL = 0x97; // NaN이 있으면 -1
+    static final int DCMPG = 0x98; // NaN이 있으면 1
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int DRETURN = 0xaf;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+
+    // 상수 풀 태그
+    static final int CONSTANT_UTF8 = 1;
+    static final int CONSTANT_DOUBLE = 6;
+    static final int CONSTANT_CLASS = 7;
+    static final int CONSTANT_METHODREF = 10;
+    static final int CONSTANT_NAMEANDTYPE = 12;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // 표현식을 바이트코드로 컴파일한다. 지원하지 않는 표현식이면 인터프리터를 그대로 반환한다.
+    static Formula compile(Expression e)
+    {
+        Node root = e.root();
+        if (!supported(root))
+            return e;
+
+        try
+        {
+            byte[] bytes = new BytecodeCompiler().generate(root);
+            if (bytes == null)
+                return e;
+
+            // STRONG 옵션 없이 정의해야 참조가 사라졌을 때 클래스가 언로드된다.
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+            MethodHandle ctor = hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class));
+            return (Formula) ctor.invoke();
+        }
+        catch (Throwable exc)
+        {
+            return e; // 클래스를 만들 수 없으면 인터프리터로 계산한다.
+        }
+    }
+
+    // 바이트코드로 바꿀 수 있는 노드로만 이루어져 있는지 확인한다.
+    static boolean supported(Node n)
+    {
+        switch (n.op)
+        {
+            case Node.NUM:
+                return true;
+            case Node.VAR:
+                return n.slot <= Short.MAX_VALUE;
+            case Node.NEG:
+                return supported(n.left);
+            case Node.DIV:
+            case Node.MOD:
+                // 에러를 알릴 열 번호는 sipush로 넘긴다.
+                return n.column <= Short.MAX_VALUE && supported(n.left) && supported(n.right);
+            case Node.ADD:
+            case Node.SUB:
+            case Node.MUL:
+            case Node.POW:
+            case Node.LT:
+            case Node.LE:
+            case Node.GT:
+            case Node.GE:
+            case Node.EQ:
+            case Node.NE:
+            case Node.AND:
+            case Node.OR:
+                return supported(n.left) && supported(n.right);
+            case Node.NOT:
+                return supported(n.left);
+            case Node.COND:
+                return supported(n.left) && supported(n.right) && supported(n.body);
+            default:
+                return false;
+        }
+    }
+
+    // 상수 풀
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIdx = new HashMap<>();
+    private int poolCount = 1;
+
+    // 메소드 코드
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private byte[] patched; // 분기 오프셋을 채운 코드
+    private final ArrayList<int[]> jumps = new ArrayList<>(); // {분기 명령 위치, 목적지}
+
+    // 클래스 파일 전체를 만든다. 코드가 너무 크면 null을 반환한다.
+    private byte[] generate(Node root) throws IOException
+    {
+        int thisClass = classRef("GeneratedFormula");
+        int superClass = classRef("java/lang/Object");
+        int iface = classRef("Formula");
+        int objInit = methodRef("java/lang/Object", "<init>", "()V");
+        int initName = utf8("<init>");
+        int initDesc = utf8("()V");
+        int evalName = utf8("evaluate");
+        int evalDesc = utf8("([D)D");
+        int codeAttr = utf8("Code");
+
+        emit(root);
+        code.write(DRETURN);
+        if (code.size() > MAX_CODE || poolCount > 0xFFFF || !patchJumps())
+            return null;
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);   // minor_version
+        // major_version. 49(Java 5) 클래스는 타입 추론으로 검증되므로 &&, ||, ?:의 분기가 있어도 StackMapTable이 필요 없다.
+        out.writeShort(49);
+        out.writeShort(poolCount);
+        pool.flush();
+        poolBytes.writeTo(out);
+
+        out.writeShort(0x0011); // ACC_PUBLIC | ACC_FINAL
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(iface);
+        out.writeShort(0);      // 필드 없음
+
+        out.writeShort(2);      // 메소드 2개
+
+        // 생성자
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(initName);
+        out.writeShort(initDesc);
+        out.writeShort(1);
+        out.writeShort(codeAttr);
+        out.writeInt(12 + 5);
+        out.writeShort(1);      // max_stack
+        out.writeShort(1);      // max_locals
+        out.writeInt(5);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(objInit);
+        out.writeByte(RETURN);
+        out.writeShort(0);      // exception_table_length
+        out.writeShort(0);      // attributes_count
+
+        // double evaluate(double[] vars)
+        out.writeShort(0x0011); // ACC_PUBLIC | ACC_FINAL
+        out.writeShort(evalName);
+        out.writeShort(evalDesc);
+        out.writeShort(1);
+        out.writeShort(codeAttr);
+        out.writeInt(12 + code.size());
+        out.writeShort(maxStack(root));
+        out.writeShort(2);      // max_locals (this, vars)
+        out.writeInt(patched.length);
+        out.write(patched);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        out.writeShort(0);      // 클래스 속성 없음
+        out.flush();
+        return buf.toByteArray();
+    }
+
+    // 노드의 값을 피연산자 스택에 올리는 코드를 만든다.
+    private void emit(Node n) throws IOException
+    {
+        switch (n.op)
+        {
+            case Node.NUM:
+                if (Double.doubleToRawLongBits(n.value) == 0L)
+                    code.write(DCONST_0);
+                else if (n.value == 1.0)
+                    code.write(DCONST_1);
+                else
+                {
+                    code.write(LDC2_W);
+                    writeShort(doubleConst(n.value));
+                }
+                break;
+            case Node.VAR:
+                // vars[slot]
+                code.write(ALOAD_1);
+                emitInt(n.slot);
+                code.write(DALOAD);
+                break;
+            case Node.NEG:
+                emit(n.left);
+                code.write(DNEG);
+                break;
+            case Node.ADD:
+                emitBinary(n, DADD);
+                break;
+            case Node.SUB:
+                emitBinary(n, DSUB);
+                break;
+            case Node.MUL:
+                emitBinary(n, DMUL);
+                break;
+            case Node.DIV:
+                emitDivision(n, "div");
+                break;
+            case Node.MOD:
+                emitDivision(n, "mod");
+                break;
+            case Node.POW:
+                emitCall(n, "Power", "pow");
+                break;
+            case Node.LT:
+            case Node.LE:
+            case Node.GT:
+            case Node.GE:
+            case Node.EQ:
+            case Node.NE:
+            case Node.AND:
+                emitBoolean(falseJumps(n), DCONST_1, DCONST_0);
+                break;
+            case Node.NOT:
+                emitBoolean(falseJumps(n.left), DCONST_0, DCONST_1);
+                break;
+            case Node.OR:
+            {
+                // 왼쪽이 참이면 오른쪽은 계산하지 않고 1이다.
+                List<Integer> left = falseJumps(n.left);
+                code.write(DCONST_1);
+                int end = jump(GOTO);
+                label(left);
+                emitBoolean(falseJumps(n.right), DCONST_1, DCONST_0);
+                label(end);
+                break;
+            }
+            case Node.COND:
+            {
+                List<Integer> otherwise = falseJumps(n.left);
+                emit(n.right);
+                int end = jump(GOTO);
+                label(otherwise);
+                emit(n.body);
+                label(end);
+                break;
+            }
+        }
+    }
+
+    // 조건이 거짓일 때 건너뛰는 분기들을 만들고 그 위치를 반환한다. 참이면 다음 명령으로 이어진다.
+    // 비교는 1, 0을 만들지 않고 바로 분기하고, &&는 두 피연산자의 분기를 모은다.
+    private List<Integer> falseJumps(Node n) throws IOException
+    {
+        List<Integer> falses = new ArrayList<>();
+        switch (n.op)
+        {
+            case Node.AND:
+                falses.addAll(falseJumps(n.left));
+                falses.addAll(falseJumps(n.right));
+                return falses;
+            // 비교 결과의 반대일 때 분기한다. NaN이 있으면 !=만 참이므로 DCMPL, DCMPG를 골라서 거짓 쪽으로 보낸다.
+            case Node.LT:
+                emitBinary(n, DCMPG);
+                falses.add(jump(IFGE));
+                return falses;
+            case Node.LE:
+                emitBinary(n, DCMPG);
+                falses.add(jump(IFGT));
+                return falses;
+            case Node.GT:
+                emitBinary(n, DCMPL);
+                falses.add(jump(IFLE));
+                return falses;
+            case Node.GE:
+                emitBinary(n, DCMPL);
+                falses.add(jump(IFLT));
+                return falses;
+            case Node.EQ:
+                emitBinary(n, DCMPL);
+                falses.add(jump(IFNE));
+                return falses;
+            case Node.NE:
+                emitBinary(n, DCMPL);
+                falses.add(jump(IFEQ));
+                return falses;
+            default:
+                // 0이 아니면 참이다. NaN은 DCMPL이 -1이므로 참이다.
+                emit(n);
+                code.write(DCONST_0);
+                code.write(DCMPL);
+                falses.add(jump(IFEQ));
+                return falses;
+        }
+    }
+
+    // 참이면 whenTrue, 거짓이면(falses로 분기하면) whenFalse 상수를 올린다.
+    private void emitBoolean(List<Integer> falses, int whenTrue, int whenFalse) throws IOException
+    {
+        code.write(whenTrue);
+        int end = jump(GOTO);
+        label(falses);
+        code.write(whenFalse);
+        label(end);
+    }
+
+    // 목적지가 아직 정해지지 않은 분기 명령을 쓰고 그 위치를 반환한다.
+    private int jump(int insn)
+    {
+        int at = code.size();
+        code.write(insn);
+        writeShort(0);
+        jumps.add(new int[] { at, -1 });
+        return jumps.size() - 1;
+    }
+
+    // 분기들의 목적지를 현재 위치로 정한다.
+    private void label(List<Integer> ids)
+    {
+        for (int id : ids)
+            label(id);
+    }
+
+    private void label(int id)
+    {
+        jumps.get(id)[1] = code.size();
+    }
+
+    // 분기 오프셋을 채운다. 오프셋이 16비트를 넘으면 false를 반환한다.
+    private boolean patchJumps()
+    {
+        patched = code.toByteArray();
+        for (int[] j : jumps)
+        {
+            int offset = j[1] - j[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                return false;
+            patched[j[0] + 1] = (byte) (offset >>> 8);
+            patched[j[0] + 2] = (byte) offset;
+        }
+        return true;
+    }
+
+    // 두 피연산자를 올린 뒤 산술 명령을 붙인다.
+    private void emitBinary(Node n, int insn) throws IOException
+    {
+        emit(n.left);
+        emit(n.right);
+        code.write(insn);
+    }
+
+    // 지수는 정적 메소드 owner.name(double, double)을 호출한다.
+    private void emitCall(Node n, String owner, String name) throws IOException
+    {
+        emit(n.left);
+        emit(n.right);
+        code.write(INVOKESTATIC);
+        writeShort(methodRef(owner, name, "(DD)D"));
+    }
+
+    // 0으로 나누기 검사가 필요한 연산은 Expression.name(double, double, 열 번호)를 호출한다.
+    private void emitDivision(Node n, String name) throws IOException
+    {
+        emit(n.left);
+        emit(n.right);
+        emitInt(n.column);
+        code.write(INVOKESTATIC);
+        writeShort(methodRef("Expression", name, "(DDI)D"));
+    }
+
+    // 0 이상 Short.MAX_VALUE 이하의 int 상수를 피연산자 스택에 올린다.
+    private void emitInt(int v)
+    {
+        if (v < 128)
+        {
+            code.write(BIPUSH);
+            code.write(v);
+        }
+        else
+        {
+            code.write(SIPUSH);
+            writeShort(v);
+        }
+    }
+
+    // 노드를 계산하는 데 필요한 피연산자 스택의 크기 (double 하나가 2칸)
+    static int maxStack(Node n)
+    {
+        switch (n.op)
+        {
+            case Node.NUM:
+            case Node.VAR:
+                return 2;
+            case Node.NEG:
+                return maxStack(n.left);
+            case Node.AND:
+                return Math.max(2, testStack(n));
+            case Node.NOT:
+                return Math.max(2, testStack(n.left));
+            case Node.OR:
+                return Math.max(2, Math.max(testStack(n.left), testStack(n.right)));
+            case Node.COND:
+                return Math.max(testStack(n.left), Math.max(maxStack(n.right), maxStack(n.body)));
+            case Node.DIV:
+            case Node.MOD:
+                return Math.max(maxStack(n.left), 2 + Math.max(maxStack(n.right), 3)); // 두 피연산자와 열 번호
+            default:
+                return Math.max(maxStack(n.left), 2 + maxStack(n.right));
+        }
+    }
+
+    // falseJumps()가 만드는 코드에 필요한 피연산자 스택의 크기
+    static int testStack(Node n)
+    {
+        if (n.op == Node.AND)
+            return Math.max(testStack(n.left), testStack(n.right));
+        if (Node.isComparison(n.op))
+            return maxStack(n);
+        return Math.max(maxStack(n), 4); // 값과 비교할 0
+    }
+
+    private void writeShort(int v)
+    {
+        code.write(v >>> 8);
+        code.write(v);
+    }
+
+    // 상수 풀 항목들을 추가한다. 같은 항목은 한 번만 넣는다.
+    private int utf8(String s) throws IOException
+    {
+        Integer idx = poolIdx.get("U" + s);
+        if (idx != null)
+            return idx;
+        pool.writeByte(CONSTANT_UTF8);
+        pool.writeUTF(s);
+        poolIdx.put("U" + s, poolCount);
+        return poolCount++;
+    }
+
+    private int classRef(String name) throws IOException
+    {
+        Integer idx = poolIdx.get("C" + name);
+        if (idx != null)
+            return idx;
+        int nameIdx = utf8(name);
+        pool.writeByte(CONSTANT_CLASS);
+        pool.writeShort(nameIdx);
+        poolIdx.put("C" + name, poolCount);
+        return poolCount++;
+    }
+
+    private int methodRef(String owner, String name, String desc) throws IOException
+    {
+        String key = "M" + owner + "." + name + desc;
+        Integer idx = poolIdx.get(key);
+        if (idx != null)
+            return idx;
+        int ownerIdx = classRef(owner);
+        int nameIdx = utf8(name);
+        int descIdx = utf8(desc);
+        pool.writeByte(CONSTANT_NAMEANDTYPE);
+        pool.writeShort(nameIdx);
+        pool.writeShort(descIdx);
+        int ntIdx = poolCount++;
+        pool.writeByte(CONSTANT_METHODREF);
+        pool.writeShort(ownerIdx);
+        pool.writeShort(ntIdx);
+        poolIdx.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private int doubleConst(double v) throws IOException
+    {
+        String key = "D" + Double.doubleToRawLongBits(v);
+        Integer idx = poolIdx.get(key);
+        if (idx != null)
+            return idx;
+        pool.writeByte(CONSTANT_DOUBLE);
+        pool.writeDouble(v);
+        poolIdx.put(key, poolCount);
+        int result = poolCount;
+        poolCount += 2; // double 상수는 상수 풀에서 두 칸을 차지한다.
+        return result;
+    }
+}
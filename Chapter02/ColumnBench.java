@@ -0,0 +1,152 @@
+// 한 표현식을 많은 행에 대해 계산할 때, 행마다 계산하는 방법과 ColumnEvaluator의 속도 비교
+// Vector API까지 비교하려면: javac --add-modules jdk.incubator.vector ... VectorKernels.java
+//                          java --add-modules jdk.incubator.vector ColumnBench
+import java.util.*;
+
+class ColumnBench
+{
+    public static void main(String[] args) throws ParserException
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Parser p = new Parser();
+        Random rnd = new Random(42);
+
+        // 변수 a, b, c의 열. 0으로 나누지 않도록 0.5 이상의 값만 넣는다.
+        double[][] data = new double[3][rows];
+        for (double[] column : data)
+            for (int i = 0; i < rows; i++)
+                column[i] = 0.5 + rnd.nextDouble() * 8.0;
+
+        ColumnKernels best = ColumnKernels.best();
+        checkDivisionByZero(p, ColumnKernels.SCALAR);
+        checkDivisionByZero(p, best);
+        System.out.printf("%d rows, Vector API %s%n", rows, best == ColumnKernels.SCALAR ? "not available" : "available");
+        System.out.println("                                    ns/row: evaluate(String)  compiled  bytecode  column  vector");
+
+        for (String formula : CompileBench.FORMULAS)
+        {
+            Expression e = p.compile(formula);
+            Formula generated = BytecodeCompiler.compile(e);
+            ColumnEvaluator scalar = new ColumnEvaluator(e, ColumnKernels.SCALAR);
+            ColumnEvaluator vector = new ColumnEvaluator(e, best);
+            double[][] columns = columns(e, data);
+            double[] expected = new double[rows];
+            double[] out = new double[rows];
+
+            // 결과가 행마다 계산한 것과 비트 단위로 같은지 먼저 확인한다.
+            perRow(e, columns, expected);
+            scalar.evaluate(columns, out);
+            check(formula, expected, out);
+            vector.evaluate(columns, out);
+            check(formula, expected, out);
+            int strings = rows / 20; // 문자열을 만드는 경로는 느리므로 일부 행만 측정한다.
+            for (int i = 0; i < strings; i += 997)
+                if (p.evaluate(substitute(formula, data, i)) != expected[i])
+                    throw new IllegalStateException("Mismatch: " + formula + " row " + i);
+
+            double[] ns = new double[5];
+            for (int warm = 0; warm < 2; warm++)
+            {
+                // 첫 번째는 JIT 컴파일을 위한 예열이다.
+                long t0 = System.nanoTime();
+                for (int r = 0; r < rounds; r++)
+                    perRowString(p, formula, data, out, strings);
+                long t1 = System.nanoTime();
+                for (int r = 0; r < rounds; r++)
+                    perRow(e, columns, out);
+                long t2 = System.nanoTime();
+                for (int r = 0; r < rounds; r++)
+                    perRow(generated, columns, out);
+                long t3 = System.nanoTime();
+                for (int r = 0; r < rounds; r++)
+                    scalar.evaluate(columns, out);
+                long t4 = System.nanoTime();
+                for (int r = 0; r < rounds; r++)
+                    vector.evaluate(columns, out);
+                long t5 = System.nanoTime();
+
+                double calls = (double) rows * rounds;
+                ns[0] = (t1 - t0) / ((double) strings * rounds);
+                ns[1] = (t2 - t1) / calls;
+                ns[2] = (t3 - t2) / calls;
+                ns[3] = (t4 - t3) / calls;
+                ns[4] = (t5 - t4) / calls;
+            }
+            System.out.printf("%-45s %10.1f %9.2f %9.2f %7.2f %7.2f%n",
+                    formula.length() > 45 ? formula.substring(0, 42) + "..." : formula, ns[0], ns[1], ns[2], ns[3], ns[4]);
+        }
+    }
+
+    // 표현식의 변수 순서에 맞춰 열을 고른다.
+    static double[][] columns(Expression e, double[][] data)
+    {
+        String[] names = e.variables();
+        double[][] columns = new double[names.length][];
+        for (int i = 0; i < names.length; i++)
+            columns[i] = data[CompileBench.NAMES.indexOf(names[i])];
+        return columns;
+    }
+
+    // 행마다 변수 값을 표현식 문자열에 넣어서 evaluate(String)으로 계산한다.
+    static void perRowString(Parser p, String formula, double[][] data, double[] out, int rows) throws ParserException
+    {
+        for (int i = 0; i < rows; i++)
+            out[i] = p.evaluate(substitute(formula, data, i));
+    }
+
+    // 행마다 변수 값 배열을 채워서 컴파일된 표현식으로 계산한다.
+    static void perRow(Formula f, double[][] columns, double[] out) throws ParserException
+    {
+        double[] vars = new double[columns.length];
+        for (int i = 0; i < out.length; i++)
+        {
+            for (int v = 0; v < vars.length; v++)
+                vars[v] = columns[v][i];
+            out[i] = f.evaluate(vars);
+        }
+    }
+
+    // 변수 자리에 row 행의 값을 넣은 표현식 문자열
+    static String substitute(String formula, double[][] data, int row)
+    {
+        StringBuilder sb = new StringBuilder(formula.length() + 64);
+        for (int i = 0; i < formula.length(); i++)
+        {
+            char ch = formula.charAt(i);
+            int v = CompileBench.NAMES.indexOf(ch);
+            if (v == -1)
+                sb.append(ch);
+            else
+                sb.append(data[v][row]);
+        }
+        return sb.toString();
+    }
+
+    // 나누는 수의 버퍼를 결과 버퍼로 다시 쓰는 경우에도 0으로 나누기를 알려야 한다.
+    // 1 / (a - b)에서 a - b의 임시 버퍼가 나눗셈의 결과 버퍼가 되고, + 2 때문에 나눗셈 결과는 출력 배열로 가지 않는다.
+    static void checkDivisionByZero(Parser p, ColumnKernels kernels) throws ParserException
+    {
+        String[] formulas = { "1 / (a - b) + 2", "a % (a - b) + 2" };
+        double[][] columns = { { 1.0, 2.0, 3.0 }, { 0.5, 2.0, 1.0 } }; // 두 번째 행에서 a - b = 0
+        for (String formula : formulas)
+        {
+            try
+            {
+                new ColumnEvaluator(p.compile(formula), kernels).evaluate(columns, new double[3]);
+            }
+            catch (ParserException exc)
+            {
+                continue;
+            }
+            throw new IllegalStateException("No Division by Zero: " + formula);
+        }
+    }
+
+    static void check(String formula, double[] expected, double[] actual)
+    {
+        for (int i = 0; i < expected.length; i++)
+            if (Double.doubleToRawLongBits(expected[i]) != Double.doubleToRawLongBits(actual[i]))
+                throw new IllegalStateException("Mismatch: " + formula + " row " + i + ": " + expected[i] + " != " + actual[i]);
+    }
+}
@@ -0,0 +1,429 @@
+/*
+    이 모듈은 컴파일된 표현식을 여러 행에 대해 한꺼번에 계산하는 열(column) 단위 계산기를 포함한다.
+    각 변수에 double 배열(열)을 연결하면, 표현식 트리를 한 행씩 계산하지 않고
+    연산 하나를 BLOCK개의 행에 대해 연달아 계산하므로 반복문이 단순해져서 SIMD 명령으로 실행될 수 있다.
+    jdk.incubator.vector 모듈이 있으면 Vector API(VectorKernels)를 사용하고, 없으면 일반 반복문을 사용한다.
+ */
+import java.util.*;
+
+// 열 단위 연산. a[aOff..], b[bOff..]의 n개 원소를 계산해서 d[dOff..]에 넣는다.
+// d는 a나 b와 같은 버퍼일 수 있으므로(ColumnEvaluator가 다 쓴 피연산자 버퍼를 결과에 다시 쓴다) 피연산자 검사는 쓰기 전에 한다.
+interface ColumnKernels
+{
+    // 일반 반복문으로 계산하는 구현
+    ColumnKernels SCALAR = new ColumnKernels() {};
+
+    default void add(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = a[aOff + i] + b[bOff + i];
+    }
+
+    default void sub(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = a[aOff + i] - b[bOff + i];
+    }
+
+    default void mul(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = a[aOff + i] * b[bOff + i];
+    }
+
+    // 나눗셈. 나누는 수 중에 0이 있으면 false를 반환한다.
+    default boolean div(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        boolean zero = hasZero(b, bOff, n); // d가 b와 같은 버퍼일 수 있으므로 먼저 검사한다.
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = a[aOff + i] / b[bOff + i];
+        return !zero;
+    }
+
+    // 나머지. 나누는 수 중에 0이 있으면 false를 반환한다.
+    default boolean mod(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        boolean zero = hasZero(b, bOff, n); // d가 b와 같은 버퍼일 수 있으므로 먼저 검사한다.
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = a[aOff + i] % b[bOff + i];
+        return !zero;
+    }
+
+    default void pow(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = Power.pow(a[aOff + i], b[bOff + i]);
+    }
+
+    default void neg(double[] a, int aOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = -a[aOff + i];
+    }
+
+    // 비교 연산(Node.LT..Node.NE). 참이면 1, 거짓이면 0
+    default void compare(int op, double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = Node.compare(op, a[aOff + i], b[bOff + i]);
+    }
+
+    // 논리 연산. 오른쪽이 에러를 낼 수 없을 때만 쓰므로 두 열을 모두 계산해 두어도 결과가 같다.
+    default void and(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = Node.truth(a[aOff + i]) && Node.truth(b[bOff + i]) ? 1.0 : 0.0;
+    }
+
+    default void or(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = Node.truth(a[aOff + i]) || Node.truth(b[bOff + i]) ? 1.0 : 0.0;
+    }
+
+    default void not(double[] a, int aOff, double[] d, int dOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            d[dOff + i] = Node.truth(a[aOff + i]) ? 0.0 : 1.0;
+    }
+
+    static boolean hasZero(double[] b, int bOff, int n)
+    {
+        for (int i = 0; i < n; i++)
+            if (b[bOff + i] == 0.0)
+                return true;
+        return false;
+    }
+
+    // 사용할 수 있는 가장 빠른 구현. Vector API는 --add-modules jdk.incubator.vector로 실행할 때만 사용한다.
+    static ColumnKernels best()
+    {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+        {
+            try
+            {
+                return (ColumnKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | LinkageError e)
+            {
+                // VectorKernels를 컴파일하지 않았으면 일반 반복문을 사용한다.
+            }
+        }
+        return SCALAR;
+    }
+}
+
+// 컴파일된 표현식을 열 단위로 계산한다. 결과와 에러는 행마다 Expression.evaluate()를 부른 것과 같다.
+// 객체는 불변이므로 여러 스레드가 함께 사용할 수 있다.
+final class ColumnEvaluator
+{
+    // 한 번에 계산하는 행 수. 중간 결과 배열들이 L1/L2 캐시에 들어가는 크기로 정한다.
+    static final int BLOCK = 1024;
+
+    private static final ColumnKernels BEST = ColumnKernels.best();
+
+    // 명령 종류 (NUM, VAR은 명령이 되지 않는다.)
+    private static final int COPY = -1; // 루트가 상수나 변수인 경우
+    private static final int ROW = -2;  // 열 단위로 계산할 수 없는 부분식(리듀스 연산, ?:)을 행마다 계산한다.
+
+    private final Expression expression;
+    private final ColumnKernels kernels;
+    private final int vars; // 변수 개수. 레지스터 0..vars-1은 변수의 열이다.
+
+    // 레지스터 vars 이후는 BLOCK 크기의 버퍼이다. 상수는 값을 채운 버퍼로 만든다.
+    private final double[] constants; // 상수 레지스터의 값 (버퍼 번호 순서)
+
+    // 명령들. 피연산자를 모두 계산한 뒤의 순서(후위 순서)로 놓인다.
+    private final int[] ops, dst, lhs, rhs;
+    private final Node[] rows; // ROW 명령이 계산하는 부분식 (lhs가 인덱스)
+
+    ColumnEvaluator(Expression expression)
+    {
+        this(expression, BEST);
+    }
+
+    ColumnEvaluator(Expression expression, ColumnKernels kernels)
+    {
+        this.expression = expression;
+        this.kernels = kernels;
+        this.vars = expression.variableCount();
+
+        Program p = new Program(vars);
+        int r = p.emit(expression.root());
+        if (p.count == 0)
+            p.add(COPY, r, r, -1);
+        p.dst[p.count - 1] = -1; // 마지막 명령은 출력 배열에 바로 쓴다.
+
+        constants = Arrays.copyOf(p.constants, p.buffers);
+        ops = Arrays.copyOf(p.ops, p.count);
+        dst = Arrays.copyOf(p.dst, p.count);
+        lhs = Arrays.copyOf(p.lhs, p.count);
+        rhs = Arrays.copyOf(p.rhs, p.count);
+        rows = p.rows.toArray(new Node[0]);
+    }
+
+    // 계산하는 표현식
+    Expression expression()
+    {
+        return expression;
+    }
+
+    // Vector API를 사용하는지 여부
+    boolean isVectorized()
+    {
+        return kernels != ColumnKernels.SCALAR;
+    }
+
+    // columns[i]는 i번째 변수(expression().variables()[i])의 열이다. 모든 행을 계산해서 out에 넣는다.
+    public void evaluate(double[][] columns, double[] out) throws ParserException
+    {
+        evaluate(columns, out, 0, out.length);
+    }
+
+    // from 행부터 to - 1 행까지 계산해서 out의 같은 위치에 넣는다.
+    // 어떤 행에서 0으로 나누면 ParserException을 발생시킨다. 이때 out의 내용은 정해지지 않는다.
+    public void evaluate(double[][] columns, double[] out, int from, int to) throws ParserException
+    {
+        if (columns.length < vars)
+            throw new IllegalArgumentException("Expected " + vars + " columns");
+        for (int i = 0; i < vars; i++)
+            if (columns[i].length < to)
+                throw new IllegalArgumentException("Column " + expression.variables()[i] + " is shorter than " + to);
+        if (from < 0 || to > out.length || from > to)
+            throw new IndexOutOfBoundsException("Rows " + from + ".." + to + " out of " + out.length);
+
+        // 호출마다 버퍼를 만드므로 여러 스레드가 동시에 계산할 수 있다.
+        double[][] buffers = new double[constants.length][];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = new double[BLOCK];
+            if (Double.doubleToRawLongBits(constants[i]) != 0)
+                Arrays.fill(buffers[i], constants[i]);
+        }
+
+        for (int start = from; start < to; start += BLOCK)
+        {
+            int n = Math.min(BLOCK, to - start);
+            try
+            {
+                block(columns, buffers, out, start, n);
+            }
+            catch (ParserException exc)
+            {
+                throw firstError(columns, start, n, exc);
+            }
+        }
+    }
+
+    // 열 단위로 계산하면 블록 안의 어느 행, 어느 연산에서 먼저 에러가 나는지 알 수 없으므로
+    // 에러가 난 블록은 행마다 다시 계산해서 Expression.evaluate()가 낼 에러(열 번호 포함)를 찾는다.
+    private ParserException firstError(double[][] columns, int start, int n, ParserException exc)
+    {
+        double[] frame = new double[expression.frameSize()];
+        for (int j = 0; j < n; j++)
+        {
+            for (int v = 0; v < vars; v++)
+                frame[v] = columns[v][start + j];
+            try
+            {
+                Expression.eval(expression.root(), frame);
+            }
+            catch (ParserException e)
+            {
+                return e;
+            }
+        }
+        return exc;
+    }
+
+    // start 행부터 n개 행에 대해 명령들을 차례로 실행한다.
+    private void block(double[][] columns, double[][] buffers, double[] out, int start, int n) throws ParserException
+    {
+        for (int i = 0; i < ops.length; i++)
+        {
+            int a = lhs[i], b = rhs[i], d = dst[i];
+            if (ops[i] == ROW)
+            {
+                perRow(rows[a], columns, d < 0 ? out : buffers[d - vars], d < 0 ? start : 0, start, n);
+                continue;
+            }
+            double[] aa = a < vars ? columns[a] : buffers[a - vars];
+            int aOff = a < vars ? start : 0;
+            double[] bb = b < 0 ? null : b < vars ? columns[b] : buffers[b - vars];
+            int bOff = b < vars ? start : 0;
+            double[] dd = d < 0 ? out : buffers[d - vars];
+            int dOff = d < 0 ? start : 0;
+
+            switch (ops[i])
+            {
+                case COPY:
+                    System.arraycopy(aa, aOff, dd, dOff, n);
+                    break;
+                case Node.ADD:
+                    kernels.add(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.SUB:
+                    kernels.sub(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.MUL:
+                    kernels.mul(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.DIV:
+                    if (!kernels.div(aa, aOff, bb, bOff, dd, dOff, n))
+                        throw new ParserException("Division by Zero");
+                    break;
+                case Node.MOD:
+                    if (!kernels.mod(aa, aOff, bb, bOff, dd, dOff, n))
+                        throw new ParserException("Division by Zero");
+                    break;
+                case Node.POW:
+                    kernels.pow(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.NEG:
+                    kernels.neg(aa, aOff, dd, dOff, n);
+                    break;
+                case Node.AND:
+                    kernels.and(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.OR:
+                    kernels.or(aa, aOff, bb, bOff, dd, dOff, n);
+                    break;
+                case Node.NOT:
+                    kernels.not(aa, aOff, dd, dOff, n);
+                    break;
+                default:
+                    if (Node.isComparison(ops[i]))
+                    {
+                        kernels.compare(ops[i], aa, aOff, bb, bOff, dd, dOff, n);
+                        break;
+                    }
+                    throw new IllegalStateException("Unknown node " + ops[i]);
+            }
+        }
+    }
+
+    // 부분식을 행마다 계산한다.
+    private void perRow(Node node, double[][] columns, double[] dd, int dOff, int start, int n) throws ParserException
+    {
+        double[] frame = new double[expression.frameSize()];
+        for (int j = 0; j < n; j++)
+        {
+            for (int v = 0; v < vars; v++)
+                frame[v] = columns[v][start + j];
+            dd[dOff + j] = Expression.eval(node, frame);
+        }
+    }
+
+    // 표현식 트리를 명령 목록으로 바꾸는 중의 상태
+    private static final class Program
+    {
+        final int vars;
+        int[] ops = new int[16], dst = new int[16], lhs = new int[16], rhs = new int[16];
+        int count;
+        double[] constants = new double[16]; // 버퍼 번호별 상수 값 (임시 버퍼는 0)
+        boolean[] temporary = new boolean[16]; // 다 쓰고 나면 다른 중간 결과에 다시 쓸 수 있는 버퍼
+        int buffers;
+        ArrayDeque<Integer> free = new ArrayDeque<>(); // 다시 쓸 수 있는 임시 버퍼
+        ArrayList<Node> rows = new ArrayList<>();
+
+        Program(int vars)
+        {
+            this.vars = vars;
+        }
+
+        // 노드의 값을 담을 레지스터를 반환한다.
+        int emit(Node n)
+        {
+            int l, r;
+
+            switch (n.op)
+            {
+                case Node.VAR:
+                    return n.slot;
+                case Node.NUM:
+                    return buffer(n.value, false);
+                case Node.SUM:
+                case Node.PRODUCT:
+                case Node.MIN:
+                case Node.MAX:
+                case Node.COND:
+                    rows.add(n);
+                    return add(ROW, temp(), rows.size() - 1, -1);
+                case Node.AND:
+                case Node.OR:
+                    // 오른쪽이 에러를 낼 수 있으면 왼쪽에 따라 계산하지 않아야 하므로 행마다 계산한다.
+                    if (Optimizer.canFail(n.right))
+                    {
+                        rows.add(n);
+                        return add(ROW, temp(), rows.size() - 1, -1);
+                    }
+                    break;
+                case Node.NEG:
+                case Node.NOT:
+                    l = emit(n.left);
+                    release(l);
+                    return add(n.op, temp(), l, -1);
+                case Node.POW:
+                    // x^2는 곱셈 한 번으로 계산한다. (Power.pow()와 결과가 같다.)
+                    if (n.right.op == Node.NUM && n.right.value == 2.0)
+                    {
+                        l = emit(n.left);
+                        release(l);
+                        return add(Node.MUL, temp(), l, l);
+                    }
+                    break;
+            }
+
+            l = emit(n.left);
+            r = emit(n.right);
+            // 연산은 원소별로 하므로 결과를 피연산자의 버퍼에 덮어써도 된다.
+            release(l);
+            release(r);
+            return add(n.op, temp(), l, r);
+        }
+
+        // 중간 결과를 담을 버퍼 레지스터
+        int temp()
+        {
+            if (!free.isEmpty())
+                return free.pop();
+            return buffer(0.0, true);
+        }
+
+        void release(int reg)
+        {
+            if (reg >= vars && temporary[reg - vars])
+                free.push(reg);
+        }
+
+        // 버퍼 레지스터를 하나 만든다.
+        int buffer(double value, boolean temp)
+        {
+            if (buffers == constants.length)
+            {
+                constants = Arrays.copyOf(constants, buffers * 2);
+                temporary = Arrays.copyOf(temporary, buffers * 2);
+            }
+            constants[buffers] = value;
+            temporary[buffers] = temp;
+            return vars + buffers++;
+        }
+
+        int add(int op, int d, int l, int r)
+        {
+            if (count == ops.length)
+            {
+                ops = Arrays.copyOf(ops, count * 2);
+                dst = Arrays.copyOf(dst, count * 2);
+                lhs = Arrays.copyOf(lhs, count * 2);
+                rhs = Arrays.copyOf(rhs, count * 2);
+            }
+            ops[count] = op;
+            dst[count] = d;
+            lhs[count] = l;
+            rhs[count] = r;
+            count++;
+            return d;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+// Parser.evaluate()와 Parser.compile(), BytecodeCompiler로 만든 표현식의 계산 속도 비교
+class CompileBench
+{
+    // 측정에 사용할 표현식들 (변수 a, b, c)
+    static final String[] FORMULAS = {
+        "a + 20 * b",
+        "(a + 2.25) * (3.125 - b) / c",
+        "2 ^ 10 - a / 7 * b",
+        "-(3 + a) * (5 - (6 / (c + 8))) + 9 * b - 11",
+        "((((a + 2) * 3 - b) / 5 + 6) * c - 8) / 9 + 10 * (11 - 12 / a)",
+        "100.25 * 1.0725 ^ 3 - 4.5 * (a + 3.75 / b) + 1e3 / c"
+    };
+
+    // 변수 값. evaluate(String)에는 이 값을 문자열에 넣어서 넘긴다.
+    static final String NAMES = "abc";
+    static final double[] VALUES = { 1.5, 0.75, 7.0 };
+
+    // 변수 자리에 값을 넣은 표현식들
+    static final String[] SUBSTITUTED = new String[FORMULAS.length];
+
+    static
+    {
+        for (int i = 0; i < FORMULAS.length; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (char ch : FORMULAS[i].toCharArray())
+            {
+                int v = NAMES.indexOf(ch);
+                if (v == -1)
+                    sb.append(ch);
+                else
+                    sb.append(VALUES[v]);
+            }
+            SUBSTITUTED[i] = sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws ParserException
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Parser p = new Parser();
+        Expression[] compiled = new Expression[FORMULAS.length];
+        Formula[] generated = new Formula[FORMULAS.length];
+        double[][] bindings = new double[FORMULAS.length][];
+
+        for (int i = 0; i < FORMULAS.length; i++)
+        {
+            compiled[i] = p.compile(FORMULAS[i]);
+            generated[i] = BytecodeCompiler.compile(compiled[i]);
+            bindings[i] = bind(compiled[i]);
+            // 세 경로의 결과가 같은지 먼저 확인한다.
+            double expected = p.evaluate(SUBSTITUTED[i]);
+            if (compiled[i].evaluate(bindings[i]) != expected
+                    || generated[i].evaluate(bindings[i]) != expected)
+                throw new IllegalStateException("Mismatch: " + FORMULAS[i]);
+        }
+
+        // JIT 컴파일이 끝나도록 먼저 한 번씩 돌린다.
+        runEvaluate(p, rounds);
+        runCompiled(compiled, bindings, rounds);
+        runCompiled(generated, bindings, rounds);
+
+        long t0 = System.nanoTime();
+        double s1 = runEvaluate(p, rounds);
+        long t1 = System.nanoTime();
+        double s2 = runCompiled(compiled, bindings, rounds);
+        long t2 = System.nanoTime();
+        double s3 = runCompiled(generated, bindings, rounds);
+        long t3 = System.nanoTime();
+
+        long calls = (long) rounds * FORMULAS.length;
+        System.out.printf("evaluate(String)     : %8.1f ns/op (checksum %s)%n", (t1 - t0) / (double) calls, s1);
+        System.out.printf("compile().evaluate() : %8.1f ns/op (checksum %s)%n", (t2 - t1) / (double) calls, s2);
+        System.out.printf("bytecode             : %8.1f ns/op (checksum %s)%n", (t3 - t2) / (double) calls, s3);
+        System.out.printf("speedup              : %8.1fx / %.1fx%n", (t1 - t0) / (double) (t2 - t1), (t1 - t0) / (double) (t3 - t2));
+    }
+
+    // 매번 문자열을 파싱해서 계산한다.
+    static double runEvaluate(Parser p, int rounds) throws ParserException
+    {
+        double sum = 0.0;
+        for (int r = 0; r < rounds; r++)
+            for (String f : SUBSTITUTED)
+                sum += p.evaluate(f);
+        return sum;
+    }
+
+    // 컴파일된 표현식을 계산한다.
+    static double runCompiled(Formula[] compiled, double[][] bindings, int rounds) throws ParserException
+    {
+        double sum = 0.0;
+        for (int r = 0; r < rounds; r++)
+            for (int i = 0; i < compiled.length; i++)
+                sum += compiled[i].evaluate(bindings[i]);
+        return sum;
+    }
+
+    // 표현식의 변수 순서에 맞춰 변수 값 배열을 만든다.
+    static double[] bind(Expression e)
+    {
+        String[] names = e.variables();
+        double[] vars = new double[names.length];
+        for (int i = 0; i < names.length; i++)
+            vars[i] = VALUES[NAMES.indexOf(names[i])];
+        return vars;
+    }
+}
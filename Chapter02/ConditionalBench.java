@@ -0,0 +1,115 @@
+// 조건 연산자 ?:로 필요한 쪽만 계산하는 식과 산술 식으로 두 쪽을 모두 계산하는 같은 식의 속도 비교
+// java ConditionalBench [반복 횟수]
+class ConditionalBench
+{
+    // x > 0.9일 때만 비싼 급수가 필요한 식. x는 [0, 1)에 고르게 퍼져 있으므로 90%의 행은 급수를 건너뛴다.
+    static final String LAZY = "x > 0.9 ? sum(i, 1, 200, x ^ i / i) : x * 2";
+
+    // 같은 값을 비교 결과(1, 0)를 곱해서 고른다. 급수를 항상 계산한다.
+    static final String EAGER = "(x > 0.9) * sum(i, 1, 200, x ^ i / i) + (1 - (x > 0.9)) * (x * 2)";
+
+    // 급수가 없는 조각별 함수. 바이트코드는 분기로 한 조각만 계산한다.
+    static final String PIECEWISE = "x < 0.25 ? x * x : x < 0.5 ? 2 * x - 0.25 : x < 0.75 ? x / 0.5 + 0.25 : x ^ 3 + 1";
+    static final String PIECEWISE_EAGER = "(x < 0.25) * (x * x) + (x >= 0.25 && x < 0.5) * (2 * x - 0.25)"
+            + " + (x >= 0.5 && x < 0.75) * (x / 0.5 + 0.25) + (x >= 0.75) * (x ^ 3 + 1)";
+
+    static final int ROWS = 1000;
+
+    public static void main(String[] args) throws ParserException
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Parser p = new Parser();
+
+        // 같은 난수열을 쓰도록 값을 미리 만든다.
+        java.util.Random rnd = new java.util.Random(1);
+        double[] xs = new double[ROWS];
+        for (int i = 0; i < ROWS; i++)
+            xs[i] = rnd.nextDouble();
+
+        compare(p, "series", LAZY, EAGER, xs, rounds);
+        compare(p, "piecewise", PIECEWISE, PIECEWISE_EAGER, xs, rounds * 10);
+    }
+
+    static void compare(Parser p, String name, String lazy, String eager, double[] xs, int rounds) throws ParserException
+    {
+        Formula[] formulas = {
+            p.compile(lazy), p.compile(eager),
+            BytecodeCompiler.compile(p.compile(lazy)), BytecodeCompiler.compile(p.compile(eager))
+        };
+        String[][] substituted = { substitute(lazy, xs), substitute(eager, xs) };
+
+        // 네 가지 방법의 결과가 모두 같아야 한다.
+        double[] x = new double[1];
+        for (int i = 0; i < xs.length; i++)
+        {
+            x[0] = xs[i];
+            double expected = p.evaluate(substituted[0][i]);
+            for (Formula f : formulas)
+                if (f.evaluate(x) != expected)
+                    throw new IllegalStateException("Mismatch at x = " + xs[i] + ": " + name);
+            if (p.evaluate(substituted[1][i]) != expected)
+                throw new IllegalStateException("Mismatch at x = " + xs[i] + ": " + name);
+        }
+
+        System.out.println(name);
+        report("compiled", time(formulas[0], xs, rounds), time(formulas[1], xs, rounds));
+        // 리듀스 연산이 있으면 바이트코드로 바꾸지 않고 인터프리터로 계산하므로 compiled와 같다.
+        if (!(formulas[2] instanceof Expression))
+            report("bytecode", time(formulas[2], xs, rounds), time(formulas[3], xs, rounds));
+        int strings = Math.max(1, rounds / 10);
+        report("evaluate(String)", time(p, substituted[0], strings), time(p, substituted[1], strings));
+    }
+
+    static void report(String label, double lazyNs, double eagerNs)
+    {
+        System.out.printf("  %-16s ?: %8.1f ns/row, arithmetic %8.1f ns/row, %5.1fx%n", label, lazyNs, eagerNs, eagerNs / lazyNs);
+    }
+
+    // 변수 x 자리에 값을 넣은 표현식들. 1.0E-4 같은 지수 표기는 파서가 읽지 못하므로 소수로 쓴다.
+    static String[] substitute(String formula, double[] xs)
+    {
+        String[] result = new String[xs.length];
+        for (int i = 0; i < xs.length; i++)
+            result[i] = formula.replace("x", "(" + java.math.BigDecimal.valueOf(xs[i]).toPlainString() + ")");
+        return result;
+    }
+
+    // 행 하나를 계산하는 데 걸린 시간 (ns). 처음 한 번은 JIT 컴파일을 위해 버린다.
+    static double time(Formula f, double[] xs, int rounds) throws ParserException
+    {
+        double[] x = new double[1];
+        double sum = 0.0;
+        long t0 = 0;
+        for (int pass = 0; pass < 2; pass++)
+        {
+            t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++)
+                for (double v : xs)
+                {
+                    x[0] = v;
+                    sum += f.evaluate(x);
+                }
+        }
+        long t1 = System.nanoTime();
+        if (sum == 42.0)
+            System.out.println(); // 계산이 지워지지 않도록 결과를 쓴다.
+        return (t1 - t0) / (double) rounds / xs.length;
+    }
+
+    static double time(Parser p, String[] exprs, int rounds) throws ParserException
+    {
+        double sum = 0.0;
+        long t0 = 0;
+        for (int pass = 0; pass < 2; pass++)
+        {
+            t0 = System.nanoTime();
+            for (int r = 0; r < rounds; r++)
+                for (String e : exprs)
+                    sum += p.evaluate(e);
+        }
+        long t1 = System.nanoTime();
+        if (sum == 42.0)
+            System.out.println();
+        return (t1 - t0) / (double) rounds / exprs.length;
+    }
+}
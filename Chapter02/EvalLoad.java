@@ -0,0 +1,148 @@
+// EvalServer에 부하를 주고 응답 시간과 처리량을 측정하는 클라이언트 (Java 21 이상)
+// java EvalLoad [URL] [동시 연결 수] [측정 시간(초)] [요청당 표현식 수]
+// URL을 "local"로 주면 같은 프로세스에서 서버를 띄워서 측정한다.
+import com.sun.net.httpserver.*;
+import java.net.*;
+import java.net.http.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+class EvalLoad
+{
+    public static void main(String[] args) throws Exception
+    {
+        String url = args.length > 0 ? args[0] : "local";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int batch = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        HttpServer server = null;
+        if (url.equals("local"))
+        {
+            server = EvalServer.start(0);
+            url = "http://" + EvalServer.hostPort(server) + "/eval";
+        }
+
+        try
+        {
+            run(URI.create(url), clients, seconds, batch);
+        }
+        finally
+        {
+            if (server != null)
+                server.stop(0);
+        }
+    }
+
+    static void run(URI uri, int clients, int seconds, int batch) throws Exception
+    {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        // 측정하기 전에 JIT 컴파일과 연결 수립을 끝낸다.
+        System.out.printf("Warming up %s (%d clients, %d expressions per request)%n", uri, clients, batch);
+        load(client, uri, clients, Math.min(seconds, 3), batch);
+
+        Result r = load(client, uri, clients, seconds, batch);
+        long[] lat = r.latencies;
+        Arrays.sort(lat);
+        System.out.printf("%d requests, %d errors in %.1f s%n", lat.length, r.errors, r.secs);
+        System.out.printf("%.0f requests/s, %.0f expressions/s%n", lat.length / r.secs, (double) lat.length * batch / r.secs);
+        if (lat.length > 0)
+            System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    percentile(lat, 0.50) / 1e6, percentile(lat, 0.99) / 1e6, lat[lat.length - 1] / 1e6);
+    }
+
+    // clients개의 가상 스레드가 seconds초 동안 요청을 보내고 응답을 기다리기를 반복한다.
+    static Result load(HttpClient client, URI uri, int clients, int seconds, int batch) throws Exception
+    {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        List<Future<long[]>> workers = new ArrayList<>();
+        long t0 = System.nanoTime();
+
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int c = 0; c < clients; c++)
+            {
+                long seed = c;
+                workers.add(pool.submit(() -> {
+                    SplittableRandom rnd = new SplittableRandom(seed);
+                    long[] lat = new long[1024];
+                    int n = 0;
+
+                    while (System.nanoTime() < deadline)
+                    {
+                        HttpRequest req = HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofString(body(rnd, batch)))
+                                .build();
+                        long start = System.nanoTime();
+                        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
+                        long end = System.nanoTime();
+                        if (resp.statusCode() != 200)
+                            errors.incrementAndGet();
+                        if (n == lat.length)
+                            lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = end - start;
+                    }
+                    return Arrays.copyOf(lat, n);
+                }));
+            }
+        }
+
+        double secs = (System.nanoTime() - t0) / 1e9;
+        long[] all = new long[0];
+        for (Future<long[]> f : workers)
+        {
+            long[] lat = f.get();
+            int n = all.length;
+            all = Arrays.copyOf(all, n + lat.length);
+            System.arraycopy(lat, 0, all, n, lat.length);
+        }
+        return new Result(all, errors.get(), secs);
+    }
+
+    // 숫자만 바꿔 가며 CompileBench의 표현식들을 한 줄에 하나씩 넣은 요청 본문
+    static String body(SplittableRandom rnd, int batch)
+    {
+        StringBuilder sb = new StringBuilder(batch * 48);
+        for (int i = 0; i < batch; i++)
+        {
+            String formula = CompileBench.FORMULAS[rnd.nextInt(CompileBench.FORMULAS.length)];
+            for (int k = 0; k < formula.length(); k++)
+            {
+                char ch = formula.charAt(k);
+                if (CompileBench.NAMES.indexOf(ch) == -1)
+                    sb.append(ch);
+                else
+                    sb.append(1 + rnd.nextInt(1000) / 8.0);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    static long percentile(long[] sorted, double p)
+    {
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+    }
+
+    // 측정 결과
+    static final class Result
+    {
+        final long[] latencies; // 요청마다의 응답 시간 (ns)
+        final long errors;
+        final double secs;
+
+        Result(long[] latencies, long errors, double secs)
+        {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.secs = secs;
+        }
+    }
+}
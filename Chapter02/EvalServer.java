@@ -0,0 +1,140 @@
+// 표현식 계산 서버 (Java 21 이상)
+// java EvalServer [포트]
+// POST /eval : 요청 본문의 한 줄을 하나의 표현식으로 보고, 같은 순서로 한 줄에 하나씩 결과를 돌려준다.
+//              에러가 난 줄에는 PDemo -batch와 같이 에러 메시지를 넣는다.
+// GET /eval?expr=식 : 표현식 하나를 계산한다.
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+class EvalServer
+{
+    // 요청 본문의 최대 크기
+    static final int MAX_BODY = 16 << 20;
+
+    private final Parser parser = new Parser(); // Parser는 상태가 없으므로 모든 요청이 함께 사용한다.
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        HttpServer server = start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(0)));
+        System.out.println("Listening on http://" + hostPort(server) + "/eval");
+    }
+
+    // 루프백 주소에서 서버를 시작한다. 요청은 하나마다 가상 스레드에서 처리한다.
+    static HttpServer start(int port) throws IOException
+    {
+        // 응답 헤더와 본문이 따로 전송되므로 Nagle 알고리즘을 끄지 않으면 지연된 ACK만큼(약 40ms) 기다리게 된다.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        EvalServer handler = new EvalServer();
+        server.createContext("/eval", handler::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return server;
+    }
+
+    static String hostPort(HttpServer server)
+    {
+        InetSocketAddress a = server.getAddress();
+        return a.getHostString() + ":" + a.getPort();
+    }
+
+    private void handle(HttpExchange ex) throws IOException
+    {
+        try (ex)
+        {
+            byte[] reply;
+
+            switch (ex.getRequestMethod())
+            {
+                case "POST":
+                    byte[] body = readBody(ex.getRequestBody());
+                    if (body == null)
+                    {
+                        send(ex, 413, "Request body is larger than " + MAX_BODY + " bytes\n");
+                        return;
+                    }
+                    reply = evaluateLines(new String(body, StandardCharsets.UTF_8));
+                    break;
+                case "GET":
+                    String expr = query(ex.getRequestURI(), "expr");
+                    if (expr == null)
+                    {
+                        send(ex, 400, "Missing expr parameter\n");
+                        return;
+                    }
+                    reply = evaluateLines(expr);
+                    break;
+                default:
+                    ex.getResponseHeaders().set("Allow", "GET, POST");
+                    send(ex, 405, "Method not allowed\n");
+                    return;
+            }
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            ex.sendResponseHeaders(200, reply.length);
+            ex.getResponseBody().write(reply);
+        }
+    }
+
+    // 한 줄에 하나씩 계산한 결과. 마지막 줄 바꿈은 빈 표현식으로 보지 않는다.
+    private byte[] evaluateLines(String text)
+    {
+        StringBuilder out = new StringBuilder(text.length());
+        int start = 0;
+        int len = text.length();
+
+        if (len > 0 && text.charAt(len - 1) == '\n')
+            len--;
+        while (start <= len)
+        {
+            int end = text.indexOf('\n', start);
+            if (end == -1 || end > len)
+                end = len;
+            String expr = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+            try
+            {
+                out.append(parser.evaluate(expr));
+            }
+            catch (ParserException exc)
+            {
+                out.append(exc);
+            }
+            out.append('\n');
+            start = end + 1;
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 본문을 읽는다. MAX_BODY보다 크면 null을 반환한다.
+    private static byte[] readBody(InputStream in) throws IOException
+    {
+        byte[] body = in.readNBytes(MAX_BODY + 1);
+        return body.length > MAX_BODY ? null : body;
+    }
+
+    private static String query(URI uri, String name)
+    {
+        String q = uri.getRawQuery();
+        if (q == null)
+            return null;
+        for (String pair : q.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if (eq != -1 && pair.substring(0, eq).equals(name))
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static void send(HttpExchange ex, int status, String message) throws IOException
+    {
+        byte[] b = message.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        ex.sendResponseHeaders(status, b.length);
+        ex.getResponseBody().write(b);
+    }
+}
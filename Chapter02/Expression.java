@@ -0,0 +1,287 @@
+/*
+    이 모듈은 Parser.compile()이 만들어 내는 컴파일된 표현식을 포함한다.
+    한 번 파싱해 둔 트리를 반복해서 계산하므로 원본 문자열을 다시 읽지 않는다.
+    변수는 컴파일할 때 처음 나온 순서대로 번호가 매겨지고, 계산할 때 double 배열로 넘긴다.
+    리듀스 연산(sum 등)의 인덱스 변수는 그 뒤의 번호를 사용한다.
+ */
+import java.util.*;
+
+// 컴파일된 표현식의 노드
+final class Node
+{
+    // 노드 종류 상수값
+    static final int NUM = 0; // 숫자 상수
+    static final int ADD = 1; // 덧셈
+    static final int SUB = 2; // 뺄셈
+    static final int MUL = 3; // 곱셈
+    static final int DIV = 4; // 나눗셈
+    static final int MOD = 5; // 나머지
+    static final int POW = 6; // 지수
+    static final int NEG = 7; // 단항 -
+    static final int VAR = 8; // 변수
+    static final int SUM = 9;      // sum(i, lo, hi, 식)
+    static final int PRODUCT = 10; // product(i, lo, hi, 식)
+    static final int MIN = 11;     // min(i, lo, hi, 식)
+    static final int MAX = 12;     // max(i, lo, hi, 식)
+    static final int LT = 13;      // <  (비교 연산은 참이면 1, 거짓이면 0)
+    static final int LE = 14;      // <=
+    static final int GT = 15;      // >
+    static final int GE = 16;      // >=
+    static final int EQ = 17;      // ==
+    static final int NE = 18;      // !=
+    static final int AND = 19;     // && (왼쪽이 거짓이면 오른쪽을 계산하지 않는다.)
+    static final int OR = 20;      // || (왼쪽이 참이면 오른쪽을 계산하지 않는다.)
+    static final int NOT = 21;     // !
+    static final int COND = 22;    // 조건 ? 식 : 식 (고른 쪽만 계산한다.)
+
+    final int op;       // 노드 종류
+    final double value; // NUM 노드의 값
+    final int slot;     // VAR 노드가 읽는 변수 배열의 인덱스, 리듀스 노드의 인덱스 변수
+    final Node left;    // 왼쪽 피연산자, 리듀스 노드의 시작 값, 조건 노드의 조건
+    final Node right;   // 오른쪽 피연산자, 리듀스 노드의 끝 값, 조건 노드의 참일 때의 식
+    final Node body;    // 리듀스 노드가 인덱스마다 계산하는 식, 조건 노드의 거짓일 때의 식
+    final int column;   // 계산 중의 에러를 알릴 열 번호 (나눗셈, 나머지는 연산자, 리듀스 노드는 이름의 위치, 알 수 없으면 0)
+
+    Node(int op, double value, int slot, Node left, Node right)
+    {
+        this(op, value, slot, left, right, null, 0);
+    }
+
+    Node(int op, double value, int slot, Node left, Node right, Node body, int column)
+    {
+        this.op = op;
+        this.value = value;
+        this.slot = slot;
+        this.left = left;
+        this.right = right;
+        this.body = body;
+        this.column = column;
+    }
+
+    // 숫자 상수 노드를 만든다.
+    static Node num(double value)
+    {
+        return new Node(NUM, value, -1, null, null);
+    }
+
+    // 변수 노드를 만든다.
+    static Node var(int slot)
+    {
+        return new Node(VAR, 0.0, slot, null, null);
+    }
+
+    // 연산자 노드를 만든다.
+    static Node op(int op, Node left, Node right)
+    {
+        return op(op, left, right, 0);
+    }
+
+    // 0으로 나누면 column(연산자의 열 번호)에서 에러를 알리는 연산자 노드를 만든다.
+    static Node op(int op, Node left, Node right, int column)
+    {
+        return new Node(op, 0.0, -1, left, right, null, column);
+    }
+
+    // 리듀스 노드를 만든다. 인덱스 변수 slot이 lo, lo + 1, ..., hi일 때의 body 값을 모은다.
+    // 범위가 잘못되면 column(리듀스 연산 이름의 열 번호)에서 에러를 알린다.
+    static Node reduce(int op, int slot, Node lo, Node hi, Node body, int column)
+    {
+        return new Node(op, 0.0, slot, lo, hi, body, column);
+    }
+
+    // 조건 노드를 만든다.
+    static Node cond(Node test, Node then, Node otherwise)
+    {
+        return new Node(COND, 0.0, -1, test, then, otherwise, 0);
+    }
+
+    // 리듀스 노드인지 확인한다.
+    static boolean isReduction(int op)
+    {
+        return op >= SUM && op <= MAX;
+    }
+
+    // 비교 노드인지 확인한다.
+    static boolean isComparison(int op)
+    {
+        return op >= LT && op <= NE;
+    }
+
+    // 피연산자의 일부만 계산할 수 있는 노드(&&, ||, ?:)인지 확인한다.
+    static boolean isLazy(int op)
+    {
+        return op == AND || op == OR || op == COND;
+    }
+
+    // 비교 연산. NaN과의 비교는 !=만 참이다.
+    static double compare(int op, double a, double b)
+    {
+        switch (op)
+        {
+            case LT:
+                return a < b ? 1.0 : 0.0;
+            case LE:
+                return a <= b ? 1.0 : 0.0;
+            case GT:
+                return a > b ? 1.0 : 0.0;
+            case GE:
+                return a >= b ? 1.0 : 0.0;
+            case EQ:
+                return a == b ? 1.0 : 0.0;
+            case NE:
+                return a != b ? 1.0 : 0.0;
+            default:
+                throw new IllegalStateException("Unknown node " + op);
+        }
+    }
+
+    // 0이 아니면 참이다. (NaN도 참)
+    static boolean truth(double v)
+    {
+        return v != 0.0;
+    }
+}
+
+// 컴파일된 표현식의 공통 인터페이스. BytecodeCompiler가 만든 클래스도 이를 구현한다.
+// vars[i]는 i번째 변수(Expression.variables()[i])의 값이다.
+interface Formula
+{
+    double evaluate(double[] vars) throws ParserException;
+}
+
+// 한 번 컴파일해 두고 여러 번 계산할 수 있는 불변 표현식
+final class Expression implements Formula
+{
+    private final Node root;          // 표현식 트리의 루트
+    private final String[] variables; // 변수 이름 (처음 나온 순서)
+    private final int frameSize;      // 변수와 리듀스 연산의 인덱스 변수를 합한 값 배열의 크기
+    private final double[] zeros;     // 모든 변수가 0인 값 배열 (읽기 전용)
+
+    Expression(Node root, String[] variables)
+    {
+        this(root, variables, 0);
+    }
+
+    // locals는 동시에 사용되는(중첩된) 리듀스 연산 인덱스 변수의 최대 개수이다.
+    Expression(Node root, String[] variables, int locals)
+    {
+        this.root = root;
+        this.variables = variables;
+        this.frameSize = variables.length + locals;
+        this.zeros = new double[variables.length];
+    }
+
+    // 표현식 트리의 루트를 반환한다.
+    Node root()
+    {
+        return root;
+    }
+
+    // 변수 이름들을 반환한다. evaluate(vars)의 vars는 이 순서를 따른다.
+    public String[] variables()
+    {
+        return variables.clone();
+    }
+
+    // 변수 개수. variables().length와 같지만 배열을 복사하지 않는다.
+    int variableCount()
+    {
+        return variables.length;
+    }
+
+    // 변수 이름에 해당하는 인덱스를 반환한다. 없으면 -1
+    public int slotOf(String name)
+    {
+        for (int i = 0; i < variables.length; i++)
+            if (variables[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    // 계산에 필요한 값 배열의 크기. 리듀스 연산이 없으면 변수 개수와 같다.
+    int frameSize()
+    {
+        return frameSize;
+    }
+
+    // 모든 변수를 0으로 두고 표현식의 값을 구한다.
+    public double evaluate() throws ParserException
+    {
+        return evaluate(zeros);
+    }
+
+    // 주어진 변수 값으로 표현식의 값을 구한다.
+    public double evaluate(double[] vars) throws ParserException
+    {
+        if (vars.length < variables.length)
+            throw new IllegalArgumentException("Expected " + variables.length + " variables");
+        // 리듀스 연산이 인덱스 변수를 쓸 자리를 만든다. 넘겨받은 배열은 바꾸지 않는다.
+        if (frameSize > variables.length)
+            vars = Arrays.copyOf(vars, Math.max(vars.length, frameSize));
+        return eval(root, vars);
+    }
+
+    // 노드의 값을 재귀적으로 구한다.
+    static double eval(Node n, double[] vars) throws ParserException
+    {
+        switch (n.op)
+        {
+            case Node.NUM:
+                return n.value;
+            case Node.VAR:
+                return vars[n.slot];
+            case Node.ADD:
+                return eval(n.left, vars) + eval(n.right, vars);
+            case Node.SUB:
+                return eval(n.left, vars) - eval(n.right, vars);
+            case Node.MUL:
+                return eval(n.left, vars) * eval(n.right, vars);
+            case Node.DIV:
+                return div(eval(n.left, vars), eval(n.right, vars), n.column);
+            case Node.MOD:
+                return mod(eval(n.left, vars), eval(n.right, vars), n.column);
+            case Node.POW:
+                return Power.pow(eval(n.left, vars), eval(n.right, vars));
+            case Node.NEG:
+                return -eval(n.left, vars);
+            case Node.SUM:
+            case Node.PRODUCT:
+            case Node.MIN:
+            case Node.MAX:
+                return Reduction.reduce(n, vars);
+            case Node.LT:
+            case Node.LE:
+            case Node.GT:
+            case Node.GE:
+            case Node.EQ:
+            case Node.NE:
+                return Node.compare(n.op, eval(n.left, vars), eval(n.right, vars));
+            case Node.AND:
+                return Node.truth(eval(n.left, vars)) && Node.truth(eval(n.right, vars)) ? 1.0 : 0.0;
+            case Node.OR:
+                return Node.truth(eval(n.left, vars)) || Node.truth(eval(n.right, vars)) ? 1.0 : 0.0;
+            case Node.NOT:
+                return Node.truth(eval(n.left, vars)) ? 0.0 : 1.0;
+            case Node.COND:
+                return Node.truth(eval(n.left, vars)) ? eval(n.right, vars) : eval(n.body, vars);
+            default:
+                throw new IllegalStateException("Unknown node " + n.op);
+        }
+    }
+
+    // 나눗셈. Parser.evalExp3()와 같이 0으로 나누면 연산자의 열 번호(column)에서 에러를 발생시킨다.
+    static double div(double result, double partialResult, int column) throws ParserException
+    {
+        if (partialResult == 0.0)
+            throw new ParserException("Division by Zero", column);
+        return result / partialResult;
+    }
+
+    // 나머지. Parser.evalExp3()와 같이 0으로 나누면 연산자의 열 번호(column)에서 에러를 발생시킨다.
+    static double mod(double result, double partialResult, int column) throws ParserException
+    {
+        if (partialResult == 0.0)
+            throw new ParserException("Division by Zero", column);
+        return result % partialResult;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+    이 모듈은 표현식 문자열을 컴파일된 Expression으로 연결해 두는 캐시를 포함한다.
+    같은 표현식이 다시 들어오면 토큰 분석과 파싱을 모두 건너뛴다.
+ */
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+class ExpressionCache
+{
+    // 제거 정책 상수값
+    static final int LRU = 0;      // 가장 오래 사용하지 않은 항목을 제거
+    static final int TINYLFU = 1;  // W-TinyLFU: 작은 LRU 창과 빈도 기반 입장 검사
+
+    // 잠금을 나누어 쓰는 세그먼트의 최대 개수 (2의 거듭제곱)
+    static final int SEGMENTS = 16;
+
+    private final Parser parser;
+    private final int policy;
+    private final boolean weighByLength; // true이면 표현식 길이를 무게로 사용
+    private final Segment[] segments;
+
+    // 통계
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // maxWeight는 캐시 전체의 최대 무게 (weighByLength가 false이면 최대 항목 수)
+    ExpressionCache(Parser parser, long maxWeight, int policy, boolean weighByLength)
+    {
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("maxWeight must be positive");
+        if (policy != LRU && policy != TINYLFU)
+            throw new IllegalArgumentException("Unknown policy " + policy);
+
+        this.parser = parser;
+        this.policy = policy;
+        this.weighByLength = weighByLength;
+
+        // 세그먼트마다 무게가 1 이상이 되도록 maxWeight가 작으면 세그먼트를 줄인다.
+        // 무게는 나머지 없이 나누어 앞의 세그먼트부터 1씩 더 주므로 합이 정확히 maxWeight이다.
+        int n = (int) Math.min(SEGMENTS, Long.highestOneBit(maxWeight));
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++)
+            segments[i] = new Segment(maxWeight / n + (i < maxWeight % n ? 1 : 0));
+    }
+
+    // 캐시를 거쳐 표현식의 값을 구한다. 결과와 에러는 parser.evaluate()와 같다.
+    public double evaluate(String expstr) throws ParserException
+    {
+        Expression e;
+        try
+        {
+            e = get(expstr);
+        }
+        catch (ParserException exc)
+        {
+            // 컴파일은 문법 에러를 계산 에러보다 먼저 알리므로, 에러의 종류와 위치는 Parser에게 맡긴다.
+            return parser.evaluate(expstr);
+        }
+        // evaluate()는 변수를 지원하지 않는다. Parser가 첫 번째 변수(또는 그보다 앞의 에러)를 알린다.
+        if (e.variableCount() != 0)
+            return parser.evaluate(expstr);
+        return e.evaluate();
+    }
+
+    // 컴파일된 표현식을 반환한다. 캐시에 없으면 컴파일해서 넣는다.
+    public Expression get(String expstr) throws ParserException
+    {
+        int h = spread(expstr.hashCode());
+        Segment seg = segments[h & (segments.length - 1)];
+
+        Expression e = seg.get(expstr, h);
+        if (e != null)
+        {
+            hits.increment();
+            return e;
+        }
+        misses.increment();
+
+        // 컴파일은 잠금 밖에서 한다. 잘못된 표현식은 캐시에 넣지 않는다.
+        e = parser.compile(expstr);
+        return seg.put(expstr, h, e, weigh(expstr));
+    }
+
+    public long hits()
+    {
+        return hits.sum();
+    }
+
+    public long misses()
+    {
+        return misses.sum();
+    }
+
+    public long evictions()
+    {
+        return evictions.sum();
+    }
+
+    // 캐시에 들어 있는 항목의 개수
+    public int size()
+    {
+        int n = 0;
+        for (Segment seg : segments)
+            n += seg.size();
+        return n;
+    }
+
+    public String toString()
+    {
+        long h = hits(), m = misses();
+        return String.format("hits=%d misses=%d evictions=%d size=%d hitRate=%.2f%%",
+                h, m, evictions(), size(), h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+
+    private int weigh(String expstr)
+    {
+        return weighByLength ? Math.max(1, expstr.length()) : 1;
+    }
+
+    // 해시 값의 상위 비트를 하위 비트로 섞는다.
+    private static int spread(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        return h ^ (h >>> 16);
+    }
+
+    // 하나의 잠금으로 보호되는 캐시 조각
+    private final class Segment
+    {
+        private final long maxWeight;
+        private final long windowMax; // TINYLFU에서 LRU 창의 최대 무게 (전체의 1%)
+
+        // 접근 순서로 정렬된 맵. 첫 번째 항목이 가장 오래 사용하지 않은 항목이다.
+        private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+        private long windowWeight;
+        private long mainWeight;
+
+        private final FrequencySketch sketch;
+
+        Segment(long maxWeight)
+        {
+            this.maxWeight = maxWeight;
+            if (policy == TINYLFU)
+            {
+                windowMax = Math.max(1, maxWeight / 100);
+                sketch = new FrequencySketch(maxWeight);
+            }
+            else
+            {
+                windowMax = 0;
+                sketch = null;
+            }
+        }
+
+        synchronized Expression get(String key, int hash)
+        {
+            if (sketch != null)
+                sketch.increment(hash);
+
+            Entry en = main.get(key);
+            if (en == null && sketch != null)
+                en = window.get(key);
+            return en == null ? null : en.expr;
+        }
+
+        synchronized Expression put(String key, int hash, Expression e, int weight)
+        {
+            // 다른 스레드가 먼저 넣었으면 그 값을 사용한다.
+            Entry en = main.get(key);
+            if (en == null && sketch != null)
+                en = window.get(key);
+            if (en != null)
+                return en.expr;
+
+            // 혼자서 세그먼트보다 무거운 항목은 넣지 않는다.
+            if (weight > maxWeight)
+            {
+                evictions.increment();
+                return e;
+            }
+
+            en = new Entry(key, hash, e, weight);
+            if (sketch == null)
+            {
+                main.put(key, en);
+                mainWeight += weight;
+                while (mainWeight > maxWeight)
+                    mainWeight -= evict(main);
+            }
+            else
+            {
+                // 새 항목은 먼저 LRU 창에 들어간다.
+                window.put(key, en);
+                windowWeight += weight;
+                while (windowWeight > windowMax && !window.isEmpty())
+                    admit(removeEldest(window));
+            }
+            return e;
+        }
+
+        // LRU 창에서 밀려난 후보를 본 영역에 넣을지 빈도로 결정한다.
+        private void admit(Entry candidate)
+        {
+            windowWeight -= candidate.weight;
+            long mainMax = maxWeight - windowMax;
+
+            while (mainWeight + candidate.weight > mainMax && !main.isEmpty())
+            {
+                Entry victim = main.values().iterator().next();
+                if (sketch.frequency(candidate.hash) <= sketch.frequency(victim.hash))
+                {
+                    evictions.increment(); // 후보가 더 드물게 쓰였으면 후보를 버린다.
+                    return;
+                }
+                mainWeight -= evict(main);
+            }
+            if (mainWeight + candidate.weight > mainMax)
+            {
+                evictions.increment();
+                return;
+            }
+            main.put(candidate.key, candidate);
+            mainWeight += candidate.weight;
+        }
+
+        // 가장 오래 사용하지 않은 항목을 제거하고 그 무게를 반환한다.
+        private int evict(LinkedHashMap<String, Entry> map)
+        {
+            evictions.increment();
+            return removeEldest(map).weight;
+        }
+
+        private Entry removeEldest(LinkedHashMap<String, Entry> map)
+        {
+            Iterator<Entry> it = map.values().iterator();
+            Entry eldest = it.next();
+            it.remove();
+            return eldest;
+        }
+
+        synchronized int size()
+        {
+            return window.size() + main.size();
+        }
+    }
+
+    // 캐시 항목
+    private static final class Entry
+    {
+        final String key;
+        final int hash;
+        final Expression expr;
+        final int weight;
+
+        Entry(String key, int hash, Expression expr, int weight)
+        {
+            this.key = key;
+            this.hash = hash;
+            this.expr = expr;
+            this.weight = weight;
+        }
+    }
+
+    // 최근 사용 빈도를 근사하는 count-min 스케치 (4비트 카운터, 주기적으로 절반으로 줄임)
+    private static final class FrequencySketch
+    {
+        private final long[] table;  // long 하나에 4비트 카운터 16개
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(long capacity)
+        {
+            int size = Integer.highestOneBit((int) Math.min(capacity, 1 << 24) * 2 - 1);
+            table = new long[Math.max(8, size)];
+            sampleSize = (int) Math.min(10L * Math.max(capacity, 8), Integer.MAX_VALUE);
+        }
+
+        void increment(int hash)
+        {
+            boolean added = false;
+            for (int i = 0; i < 4; i++)
+            {
+                int idx = index(hash, i);
+                int shift = counterShift(hash, i);
+                if (((table[idx] >>> shift) & 0xFL) != 0xFL)
+                {
+                    table[idx] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize)
+                reset();
+        }
+
+        int frequency(int hash)
+        {
+            int freq = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++)
+                freq = Math.min(freq, (int) ((table[index(hash, i)] >>> counterShift(hash, i)) & 0xFL));
+            return freq;
+        }
+
+        // 오래된 빈도가 계속 남지 않도록 모든 카운터를 절반으로 줄인다.
+        private void reset()
+        {
+            for (int i = 0; i < table.length; i++)
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            additions /= 2;
+        }
+
+        private int index(int hash, int i)
+        {
+            int h = (hash + i * 0x9E3779B9) * 0x85EBCA6B;
+            return (h ^ (h >>> 15)) & (table.length - 1);
+        }
+
+        // 해시의 아래 비트는 세그먼트를 고르는 데 쓰여서 세그먼트 안에서 모두 같으므로 한 번 더 섞어서 쓴다.
+        private int counterShift(int hash, int i)
+        {
+            int h = hash * 0x9E3779B9;
+            h ^= h >>> 16;
+            return (((h >>> (i * 8)) & 0xF) << 2);
+        }
+    }
+}
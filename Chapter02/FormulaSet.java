@@ -0,0 +1,493 @@
+/*
+    이 모듈은 많은 표현식을 하나의 DAG(방향성 비순환 그래프)로 모아서 함께 계산하는 표현식 집합을 포함한다.
+    표현식마다 Parser.compile()로 만든 트리의 노드를 아래에서부터 (종류, 값, 변수, 자식 번호)로 찾아서,
+    구조가 같은 부분식은 하나의 노드로 합친다(hash-consing). 변수는 이름으로 모든 표현식에 걸쳐 번호를 매긴다.
+    노드는 자식보다 뒤에 번호가 매겨지므로, 계산할 때는 번호 순서대로 한 번씩만 계산하면
+    여러 표현식이 함께 쓰는 부분식도 변수 값 하나에 대해 한 번만 계산된다.
+    각 표현식의 값과 에러는 그 표현식의 Expression.evaluate()와 같다.
+    리듀스 연산은 인덱스 변수 때문에 합치지 않고 표현식마다 따로 계산한다.
+    &&, ||의 오른쪽과 ?:의 두 식 안에만 있는 노드는 번호 순서로 계산하지 않고, 고른 쪽일 때만 그때 계산한다.
+    /와 %는 열 번호 없이 합치므로, /나 %가 있는 표현식은 원래 문자열을 두었다가 에러가 나면 다시 컴파일해서
+    Expression.evaluate()로 계산해서 열 번호까지 같은 에러를 구한다. (ColumnEvaluator.firstError()와 같은 방법)
+ */
+import java.util.*;
+
+final class FormulaSet
+{
+    // 독립된 트리의 노드(Node) 하나의 크기 추정값 (압축된 참조를 쓰는 64비트 JVM)
+    // 객체 헤더 12 + op, slot, column 12 + value 8 + left, right, body 참조 12 = 44, 8바이트 정렬로 48 바이트
+    static final int TREE_NODE_BYTES = 48;
+
+    // DAG 노드 하나의 크기: op, slot, left, right, body (int 5개) + value (double) + eager (boolean)
+    static final int DAG_NODE_BYTES = 5 * 4 + 8 + 1;
+
+    private final Parser parser = new Parser();
+
+    // DAG 노드. i번째 노드의 자식은 항상 i보다 앞에 있다.
+    private int[] op = new int[64];
+    private double[] value = new double[64];
+    private int[] slot = new int[64];  // VAR: 변수 번호, 리듀스 연산: reductions의 인덱스
+    private int[] left = new int[64];  // 자식 노드 번호 (없으면 -1)
+    private int[] right = new int[64];
+    private int[] body = new int[64];  // ?:의 거짓일 때의 식
+    private boolean[] eager = new boolean[64]; // 어떤 표현식을 계산할 때 항상 계산하는 노드
+    private int count;
+
+    // 구조가 같은 노드를 찾기 위한 개방 주소 해시 표. 노드 번호 + 1을 넣고 0은 빈 칸이다.
+    // 키를 따로 두지 않고 위의 배열과 비교하므로 노드마다 int 두 개 정도만 더 든다.
+    private int[] table = new int[128];
+
+    // 모든 표현식의 변수 이름과 번호
+    private final ArrayList<String> names = new ArrayList<>();
+    private final HashMap<String, Integer> slots = new HashMap<>();
+
+    // 표현식마다의 루트 노드 번호와 원래 문자열 (/나 %가 있는 표현식만. 에러가 나면 다시 계산한다.)
+    private int[] roots = new int[16];
+    private String[] sources = new String[16];
+    private int kept;         // 둔 문자열의 수
+    private long sourceChars; // 둔 문자열의 글자 수
+    private boolean divides;  // intern() 중인 표현식에 /나 %가 있는지 여부
+    private int formulas;
+
+    // 합치지 않는 리듀스 연산
+    private final ArrayList<Reduce> reductions = new ArrayList<>();
+
+    // 독립된 트리였다면 필요했을 노드 수와 그중 리듀스 연산 안의 노드 수
+    private long treeNodes;
+    private long reductionNodes;
+
+    // 표현식을 컴파일해서 집합에 넣고 그 번호를 반환한다.
+    public int add(String formula) throws ParserException
+    {
+        Expression e = parser.compile(formula);
+        String[] vars = e.variables();
+        int[] map = new int[vars.length];
+        for (int i = 0; i < vars.length; i++)
+            map[i] = slotOf(vars[i], true);
+
+        divides = false;
+        int root = intern(e.root(), map, e.frameSize());
+        markEager(root);
+        if (formulas == roots.length)
+        {
+            roots = Arrays.copyOf(roots, formulas * 2);
+            sources = Arrays.copyOf(sources, formulas * 2);
+        }
+        roots[formulas] = root;
+        if (divides)
+        {
+            sources[formulas] = formula;
+            kept++;
+            sourceChars += formula.length();
+        }
+        return formulas++;
+    }
+
+    // 표현식의 개수
+    public int size()
+    {
+        return formulas;
+    }
+
+    // 모든 표현식의 변수 이름들. evaluate()의 vars는 이 순서를 따른다.
+    public String[] variables()
+    {
+        return names.toArray(new String[0]);
+    }
+
+    // 변수 이름에 해당하는 인덱스를 반환한다. 없으면 -1
+    public int slotOf(String name)
+    {
+        return slotOf(name, false);
+    }
+
+    private int slotOf(String name, boolean create)
+    {
+        Integer s = slots.get(name);
+        if (s != null)
+            return s;
+        if (!create)
+            return -1;
+        names.add(name);
+        slots.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    // DAG의 노드 수
+    public int nodes()
+    {
+        return count;
+    }
+
+    // 표현식마다 따로 트리를 두었을 때의 노드 수
+    public long treeNodes()
+    {
+        return treeNodes;
+    }
+
+    // 따로 둔 트리와 DAG의 메모리 사용량(추정값) 비교
+    public String memoryReport()
+    {
+        long tree = treeNodes * TREE_NODE_BYTES;
+        // 합치지 않은 리듀스 연산의 트리와 표현식 문자열은 그대로 남는다.
+        // 표현식마다 루트 번호와 문자열 참조 8바이트, 둔 문자열마다 String 객체 24 + 배열 헤더 16 바이트와 글자당 1바이트(Latin-1)
+        long dag = (long) count * DAG_NODE_BYTES + (long) table.length * 4 + (long) formulas * 8
+                + (long) kept * 40 + sourceChars + reductionNodes * TREE_NODE_BYTES;
+        return String.format("%d formulas, %d tree nodes (%d KB) -> %d DAG nodes (%d KB), %.1f%% saved",
+                formulas, treeNodes, tree / 1024, count, dag / 1024, tree == 0 ? 0.0 : 100.0 * (tree - dag) / tree);
+    }
+
+    // 모든 표현식을 계산해서 out[i]에 i번째 표현식의 값을 넣는다. vars는 variables() 순서의 변수 값이다.
+    // errors가 null이 아니면 에러가 난 표현식은 errors[i]에 에러를 넣고 out[i]는 NaN으로 둔다. (에러가 없으면 null)
+    // errors가 null이면 에러가 난 첫 표현식의 에러를 발생시킨다.
+    // 여러 스레드에서 함께 불러도 된다. (계산하는 동안 add()를 부르면 안 된다.)
+    public void evaluate(double[] vars, double[] out, ParserException[] errors) throws ParserException
+    {
+        if (vars.length < names.size())
+            throw new IllegalArgumentException("Expected " + names.size() + " variables");
+
+        Run run = new Run(vars, count);
+        for (int i = 0; i < count; i++)
+            if (eager[i])
+                compute(run, i);
+
+        for (int f = 0; f < formulas; f++)
+        {
+            ParserException exc = run.err == null ? null : run.err[roots[f]];
+            if (exc != null)
+                exc = error(f, vars, exc);
+            if (exc != null && errors == null)
+                throw exc;
+            out[f] = run.v[roots[f]];
+            if (errors != null)
+                errors[f] = exc;
+        }
+    }
+
+    // f번째 표현식의 에러. 합친 /, % 노드는 어느 표현식의 열 번호도 갖고 있지 않으므로
+    // 그 표현식만 다시 컴파일해서 계산한다. 에러는 드물게 나므로 계산하는 경로에는 비용이 없다.
+    private ParserException error(int f, double[] vars, ParserException exc)
+    {
+        if (sources[f] == null) // 다른 에러는 열 번호를 그대로 갖고 있다.
+            return exc;
+        try
+        {
+            Expression e = parser.compile(sources[f]);
+            String[] own = e.variables();
+            double[] frame = new double[own.length];
+            for (int k = 0; k < own.length; k++)
+                frame[k] = vars[slotOf(own[k])];
+            e.evaluate(frame);
+        }
+        catch (ParserException again)
+        {
+            return again;
+        }
+        return exc; // 같은 값을 계산하므로 여기에 오지 않는다.
+    }
+
+    // 노드의 값. 아직 계산하지 않은 노드이면 지금 계산한다.
+    private double get(Run run, int i)
+    {
+        if (!run.done[i])
+            compute(run, i);
+        return run.v[i];
+    }
+
+    // i번째 노드를 계산한다. 자식의 에러는 계산하는 순서대로(왼쪽부터) 전달한다. (Expression.eval()과 같다.)
+    private void compute(Run run, int i)
+    {
+        double[] v = run.v;
+        int l = left[i], r = right[i];
+        double a, b;
+        run.done[i] = true;
+
+        switch (op[i])
+        {
+            case Node.NUM:
+                v[i] = value[i];
+                return;
+            case Node.VAR:
+                v[i] = run.vars[slot[i]];
+                return;
+            case Node.AND:
+            case Node.OR:
+            case Node.COND:
+            case Node.SUM:
+            case Node.PRODUCT:
+            case Node.MIN:
+            case Node.MAX:
+                // 자주 쓰는 산술 연산의 코드를 작게 두어 JIT가 인라인하도록 따로 계산한다.
+                special(run, i);
+                return;
+        }
+
+        a = get(run, l);
+        if (run.failed(i, l))
+            return;
+        b = 0.0;
+        if (r >= 0)
+        {
+            b = get(run, r);
+            if (run.failed(i, r))
+                return;
+        }
+
+        try
+        {
+            switch (op[i])
+            {
+                case Node.ADD:
+                    v[i] = a + b;
+                    break;
+                case Node.SUB:
+                    v[i] = a - b;
+                    break;
+                case Node.MUL:
+                    v[i] = a * b;
+                    break;
+                case Node.DIV:
+                    v[i] = Expression.div(a, b, 0); // 열 번호는 error()가 구한다.
+                    break;
+                case Node.MOD:
+                    v[i] = Expression.mod(a, b, 0);
+                    break;
+                case Node.POW:
+                    v[i] = Power.pow(a, b);
+                    break;
+                case Node.NEG:
+                    v[i] = -a;
+                    break;
+                case Node.NOT:
+                    v[i] = Node.truth(a) ? 0.0 : 1.0;
+                    break;
+                default:
+                    v[i] = Node.compare(op[i], a, b);
+                    break;
+            }
+        }
+        catch (ParserException exc)
+        {
+            run.fail(i, exc);
+        }
+    }
+
+    // &&, ||, ?:와 리듀스 연산을 계산한다. &&, ||, ?:는 고른 쪽의 자식만 계산한다.
+    private void special(Run run, int i)
+    {
+        double[] v = run.v;
+        int l = left[i], r = right[i];
+        double a, b;
+
+        switch (op[i])
+        {
+            case Node.AND:
+            case Node.OR:
+                a = get(run, l);
+                if (run.failed(i, l))
+                    return;
+                // 왼쪽으로 결과가 정해지면 오른쪽은 계산하지 않는다.
+                if (Node.truth(a) == (op[i] == Node.OR))
+                {
+                    v[i] = op[i] == Node.OR ? 1.0 : 0.0;
+                    return;
+                }
+                b = get(run, r);
+                if (!run.failed(i, r))
+                    v[i] = Node.truth(b) ? 1.0 : 0.0;
+                return;
+            case Node.COND:
+                a = get(run, l);
+                if (run.failed(i, l))
+                    return;
+                int c = Node.truth(a) ? r : body[i];
+                b = get(run, c);
+                if (!run.failed(i, c))
+                    v[i] = b;
+                return;
+            default:
+                try
+                {
+                    v[i] = reductions.get(slot[i]).evaluate(run.vars);
+                }
+                catch (ParserException exc)
+                {
+                    run.fail(i, exc);
+                }
+        }
+    }
+
+    // 루트에서 &&, ||의 오른쪽이나 ?:의 두 식을 거치지 않고 닿는 노드들을 항상 계산하는 노드로 정한다.
+    private void markEager(int i)
+    {
+        while (i >= 0 && !eager[i])
+        {
+            eager[i] = true;
+            if (Node.isLazy(op[i]))
+                i = left[i];
+            else
+            {
+                markEager(left[i]);
+                i = right[i];
+            }
+        }
+    }
+
+    // 트리의 노드를 DAG에 넣고 번호를 반환한다. 같은 구조의 노드가 이미 있으면 그 번호를 반환한다.
+    // map은 표현식의 변수 번호를 집합의 변수 번호로 바꾼다.
+    private int intern(Node n, int[] map, int frameSize)
+    {
+        treeNodes++;
+        if (n.op == Node.DIV || n.op == Node.MOD)
+            divides = true;
+        switch (n.op)
+        {
+            case Node.NUM:
+                return node(Node.NUM, n.value, -1, -1, -1, -1);
+            case Node.VAR:
+                return node(Node.VAR, 0.0, map[n.slot], -1, -1, -1);
+            case Node.NEG:
+            case Node.NOT:
+                return node(n.op, 0.0, -1, intern(n.left, map, frameSize), -1, -1);
+            case Node.COND:
+                int test = intern(n.left, map, frameSize);
+                int then = intern(n.right, map, frameSize);
+                return node(Node.COND, 0.0, -1, test, then, intern(n.body, map, frameSize));
+            case Node.SUM:
+            case Node.PRODUCT:
+            case Node.MIN:
+            case Node.MAX:
+                long nodes = size(n);
+                treeNodes += nodes - 1;
+                reductionNodes += nodes;
+                reductions.add(new Reduce(n, map, frameSize));
+                return node(n.op, 0.0, reductions.size() - 1, -1, -1, -1);
+            default:
+                int l = intern(n.left, map, frameSize);
+                int r = intern(n.right, map, frameSize);
+                return node(n.op, 0.0, -1, l, r, -1);
+        }
+    }
+
+    private int node(int o, double val, int s, int l, int r, int b)
+    {
+        long bits = Double.doubleToRawLongBits(val); // -0과 0, NaN도 구별한다.
+        int mask = table.length - 1;
+        int at = hash(o, bits, s, l, r, b) & mask;
+        for (int id; (id = table[at] - 1) >= 0; at = (at + 1) & mask)
+            if (op[id] == o && Double.doubleToRawLongBits(value[id]) == bits && slot[id] == s
+                    && left[id] == l && right[id] == r && body[id] == b)
+                return id;
+
+        if (count == op.length)
+        {
+            int cap = count * 2;
+            op = Arrays.copyOf(op, cap);
+            value = Arrays.copyOf(value, cap);
+            slot = Arrays.copyOf(slot, cap);
+            left = Arrays.copyOf(left, cap);
+            right = Arrays.copyOf(right, cap);
+            body = Arrays.copyOf(body, cap);
+            eager = Arrays.copyOf(eager, cap);
+        }
+        op[count] = o;
+        value[count] = val;
+        slot[count] = s;
+        left[count] = l;
+        right[count] = r;
+        body[count] = b;
+        table[at] = count + 1;
+        if (++count * 2 > table.length)
+            rehash();
+        return count - 1;
+    }
+
+    // 표가 반 넘게 차면 두 배로 늘린다.
+    private void rehash()
+    {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++)
+        {
+            int at = hash(op[id], Double.doubleToRawLongBits(value[id]), slot[id], left[id], right[id], body[id]) & mask;
+            while (table[at] != 0)
+                at = (at + 1) & mask;
+            table[at] = id + 1;
+        }
+    }
+
+    private static int hash(int o, long bits, int s, int l, int r, int b)
+    {
+        // 자식 번호는 작은 연속된 정수이므로 비트를 잘 섞어야 선형 탐색이 길어지지 않는다.
+        long h = bits * 0x9E3779B97F4A7C15L;
+        h = (h ^ o) * 0x9E3779B97F4A7C15L;
+        h = (h ^ s) * 0x9E3779B97F4A7C15L;
+        h = (h ^ l) * 0x9E3779B97F4A7C15L;
+        h = (h ^ r) * 0x9E3779B97F4A7C15L;
+        h = (h ^ b) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long size(Node n)
+    {
+        if (n == null)
+            return 0;
+        return 1 + size(n.left) + size(n.right) + size(n.body);
+    }
+
+    // evaluate() 한 번의 상태
+    private static final class Run
+    {
+        final double[] vars;
+        final double[] v;       // 노드의 값
+        final boolean[] done;   // 계산한 노드
+        ParserException[] err;  // 노드마다의 에러. 에러가 처음 날 때 만든다.
+
+        Run(double[] vars, int count)
+        {
+            this.vars = vars;
+            this.v = new double[count];
+            this.done = new boolean[count];
+        }
+
+        void fail(int i, ParserException exc)
+        {
+            if (err == null)
+                err = new ParserException[v.length];
+            err[i] = exc;
+            v[i] = Double.NaN;
+        }
+
+        // 자식 c에 에러가 있으면 i에 전달하고 true를 반환한다.
+        boolean failed(int i, int c)
+        {
+            if (err == null || err[c] == null)
+                return false;
+            fail(i, err[c]);
+            return true;
+        }
+    }
+
+    // 표현식 하나의 리듀스 연산. 원래 표현식의 변수 번호로 된 값 배열을 만들어서 계산한다.
+    private static final class Reduce
+    {
+        final Node node;
+        final int[] map;
+        final int frameSize;
+
+        Reduce(Node node, int[] map, int frameSize)
+        {
+            this.node = node;
+            this.map = map;
+            this.frameSize = frameSize;
+        }
+
+        double evaluate(double[] vars) throws ParserException
+        {
+            double[] frame = new double[frameSize];
+            for (int i = 0; i < map.length; i++)
+                frame[i] = vars[map[i]];
+            return Reduction.reduce(node, frame);
+        }
+    }
+}
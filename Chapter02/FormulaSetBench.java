@@ -0,0 +1,169 @@
+// 많은 표현식을 따로 계산할 때와 FormulaSet(공통 부분식을 합친 DAG)으로 계산할 때의 비교
+// java FormulaSetBench [표현식 수] [반복 횟수]
+import java.util.*;
+
+class FormulaSetBench
+{
+    // 표현식들이 함께 쓰는 부분식
+    static final String[] SHARED = {
+        "(a + b) * c",
+        "(a - c) / (b + 1)",
+        "a ^ 2 + b ^ 2",
+        "(d * 1.05 - e) * f",
+        "-(g + h) * (a + b)",
+        "(c + d) ^ 0.5",
+        "e / (f + g + 1)",
+        "(h - a) * (h + a)"
+    };
+
+    public static void main(String[] args) throws ParserException
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String[] formulas = generate(new SplittableRandom(42), count);
+
+        Parser p = new Parser();
+        long t0 = System.nanoTime();
+        Expression[] compiled = new Expression[count];
+        for (int i = 0; i < count; i++)
+            compiled[i] = p.compile(formulas[i]);
+        long t1 = System.nanoTime();
+        FormulaSet set = new FormulaSet();
+        for (String f : formulas)
+            set.add(f);
+        long t2 = System.nanoTime();
+
+        System.out.println(set.memoryReport());
+        checkDivision();
+        System.out.printf("compile: %.0f ms separately, %.0f ms into FormulaSet%n", (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+
+        // 변수 값을 바꿔 가며 두 방법의 결과가 같은지 확인하고 시간을 잰다.
+        String[] names = set.variables();
+        double[] vars = new double[names.length];
+        double[] out = new double[count];
+        ParserException[] errors = new ParserException[count];
+        double[][] bindings = new double[count][];
+        long separate = 0, dag = 0;
+        int mismatches = 0;
+
+        for (int r = 0; r < rounds; r++)
+        {
+            for (int k = 0; k < vars.length; k++)
+                vars[k] = 0.5 + (r * 7 + k * 3) % 11;
+            for (int i = 0; i < count; i++)
+            {
+                String[] own = compiled[i].variables();
+                double[] b = bindings[i] == null ? new double[own.length] : bindings[i];
+                for (int k = 0; k < own.length; k++)
+                    b[k] = vars[set.slotOf(own[k])];
+                bindings[i] = b;
+            }
+
+            long s0 = System.nanoTime();
+            double sum = 0.0;
+            for (int i = 0; i < count; i++)
+            {
+                try
+                {
+                    sum += compiled[i].evaluate(bindings[i]);
+                }
+                catch (ParserException exc)
+                {
+                    sum += 1.0;
+                }
+            }
+            long s1 = System.nanoTime();
+            set.evaluate(vars, out, errors);
+            long s2 = System.nanoTime();
+
+            // 처음 몇 번은 JIT 컴파일 시간이므로 세지 않는다.
+            if (r >= rounds / 4)
+            {
+                separate += s1 - s0;
+                dag += s2 - s1;
+            }
+            for (int i = 0; i < count; i++)
+            {
+                double expected;
+                try
+                {
+                    expected = compiled[i].evaluate(bindings[i]);
+                }
+                catch (ParserException exc)
+                {
+                    if (errors[i] == null || !errors[i].toString().equals(exc.toString()))
+                        mismatches++;
+                    continue;
+                }
+                if (errors[i] != null || Double.compare(expected, out[i]) != 0)
+                    mismatches++;
+            }
+            if (sum == 42.0)
+                System.out.println(); // 계산이 없어지지 않도록 결과를 사용한다.
+        }
+
+        int measured = rounds - rounds / 4;
+        System.out.printf("evaluate all: %.2f ms separately, %.2f ms with FormulaSet (%.1fx), %d mismatches%n",
+                separate / 1e6 / measured, dag / 1e6 / measured, separate / (double) dag, mismatches);
+    }
+
+    // 위치가 다른 /도 *처럼 하나의 노드로 합쳐야 하고, 0으로 나누면 표현식마다 자기 / 위치의 에러가 나야 한다.
+    static void checkDivision() throws ParserException
+    {
+        String[] formulas = { "(a + b) / c * d", "e + (a + b) / c * d", "e + f + (a + b) / c * d" };
+        FormulaSet divided = new FormulaSet();
+        FormulaSet multiplied = new FormulaSet();
+        for (String f : formulas)
+        {
+            divided.add(f);
+            multiplied.add(f.replace('/', '*'));
+        }
+        if (divided.nodes() != multiplied.nodes())
+            throw new IllegalStateException("Division not shared: " + divided.nodes() + " nodes, " + multiplied.nodes() + " with *");
+
+        double[] vars = new double[divided.variables().length];
+        Arrays.fill(vars, 1.0);
+        vars[divided.slotOf("c")] = 0.0;
+        ParserException[] errors = new ParserException[formulas.length];
+        divided.evaluate(vars, new double[formulas.length], errors);
+        Parser p = new Parser();
+        for (int i = 0; i < formulas.length; i++)
+        {
+            Expression e = p.compile(formulas[i]);
+            double[] own = new double[e.variableCount()];
+            for (int k = 0; k < own.length; k++)
+                own[k] = vars[divided.slotOf(e.variables()[k])];
+            try
+            {
+                e.evaluate(own);
+                throw new IllegalStateException("No Division by Zero: " + formulas[i]);
+            }
+            catch (ParserException exc)
+            {
+                if (errors[i] == null || !errors[i].toString().equals(exc.toString()))
+                    throw new IllegalStateException("Wrong error: " + formulas[i] + ": " + errors[i] + ", expected " + exc);
+            }
+        }
+    }
+
+    // 공통 부분식 두세 개를 연산자와 상수로 이은 표현식들
+    static String[] generate(SplittableRandom rnd, int count)
+    {
+        String[] formulas = new String[count];
+        String ops = "+-*/";
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int terms = 2 + rnd.nextInt(2);
+            for (int t = 0; t < terms; t++)
+            {
+                if (t > 0)
+                    sb.append(' ').append(ops.charAt(rnd.nextInt(ops.length()))).append(' ');
+                sb.append('(').append(SHARED[rnd.nextInt(SHARED.length)]).append(')');
+            }
+            sb.append(" * ").append(1 + rnd.nextInt(100));
+            formulas[i] = sb.toString();
+        }
+        return formulas;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+    이 모듈은 컴파일된 표현식의 값과 모든 변수에 대한 편미분을 한 번에 구하는 전진 모드 자동 미분을 포함한다.
+    노드마다 값과 함께 변수 개수만큼의 미분 값(이원수의 dual 부분)을 계산하고 연쇄 법칙으로 위로 전달한다.
+    차분으로 미분을 구하려면 변수마다 표현식을 두 번씩 더 계산해야 하고 정밀도도 잃지만,
+    여기서는 트리를 한 번만 지나고 결과는 해석적인 미분과 같다.
+    값은 Expression.evaluate()와 같은 순서로 계산하므로 결과가 같고, 0으로 나누면 같은 에러를 발생시킨다.
+    미분 값은 값이 매끄러운 곳에서의 미분이다. (%는 몫이 바뀌지 않는 구간, min, max와 ?:는 고른 항의 미분)
+    비교와 논리 연산의 값은 계단 함수이므로 미분은 0이고, ?:는 고른 쪽만 계산한다.
+ */
+import java.util.*;
+
+final class Gradient
+{
+    private final Expression expr;
+    private final Node root;
+    private final int count;  // 미분할 변수의 개수
+    private final int depth;  // 트리의 높이. 작업 공간의 크기를 정한다.
+
+    Gradient(Expression expr)
+    {
+        this.expr = expr;
+        this.root = expr.root();
+        this.count = expr.variableCount();
+        this.depth = height(root);
+    }
+
+    // 원래 표현식을 반환한다.
+    public Expression expression()
+    {
+        return expr;
+    }
+
+    // 표현식의 값을 반환하고, grad[i]에 i번째 변수(Expression.variables()[i])에 대한 편미분을 넣는다.
+    // 여러 스레드에서 함께 불러도 된다.
+    public double evaluate(double[] vars, double[] grad) throws ParserException
+    {
+        if (vars.length < count || grad.length < count)
+            throw new IllegalArgumentException("Expected " + count + " variables");
+        if (expr.frameSize() > count)
+            vars = Arrays.copyOf(vars, Math.max(vars.length, expr.frameSize()));
+
+        // 노드 하나의 미분 값은 작업 공간의 한 칸(count개)을 차지한다.
+        // k번째 칸의 노드는 왼쪽 자식을 k + 1번째, 오른쪽 자식을 k + 2번째 칸에 계산한다.
+        double[] work = new double[(2 * depth + 1) * count];
+        double v = eval(root, vars, work, 0);
+        System.arraycopy(work, 0, grad, 0, count);
+        return v;
+    }
+
+    // 노드의 값을 반환하고 미분 값을 work의 at번째 칸에 넣는다.
+    private double eval(Node n, double[] vars, double[] work, int at) throws ParserException
+    {
+        int t = at * count;
+        int a = t + count;
+        int b = a + count;
+        double l, r, v;
+
+        switch (n.op)
+        {
+            case Node.NUM:
+                Arrays.fill(work, t, t + count, 0.0);
+                return n.value;
+            case Node.VAR:
+                Arrays.fill(work, t, t + count, 0.0);
+                if (n.slot < count) // 리듀스 연산의 인덱스 변수는 상수로 본다.
+                    work[t + n.slot] = 1.0;
+                return vars[n.slot];
+            case Node.NEG:
+                v = -eval(n.left, vars, work, at + 1);
+                for (int i = 0; i < count; i++)
+                    work[t + i] = -work[a + i];
+                return v;
+            case Node.SUM:
+            case Node.PRODUCT:
+            case Node.MIN:
+            case Node.MAX:
+                return reduce(n, vars, work, at);
+            case Node.COND:
+                // 고른 쪽의 미분이 그대로 이 노드의 미분이다.
+                return eval(Node.truth(Expression.eval(n.left, vars)) ? n.right : n.body, vars, work, at);
+            case Node.LT:
+            case Node.LE:
+            case Node.GT:
+            case Node.GE:
+            case Node.EQ:
+            case Node.NE:
+            case Node.AND:
+            case Node.OR:
+            case Node.NOT:
+                Arrays.fill(work, t, t + count, 0.0);
+                return Expression.eval(n, vars);
+        }
+
+        l = eval(n.left, vars, work, at + 1);
+        r = eval(n.right, vars, work, at + 2);
+
+        switch (n.op)
+        {
+            case Node.ADD:
+                for (int i = 0; i < count; i++)
+                    work[t + i] = work[a + i] + work[b + i];
+                return l + r;
+            case Node.SUB:
+                for (int i = 0; i < count; i++)
+                    work[t + i] = work[a + i] - work[b + i];
+                return l - r;
+            case Node.MUL:
+                for (int i = 0; i < count; i++)
+                    work[t + i] = work[a + i] * r + l * work[b + i];
+                return l * r;
+            case Node.DIV:
+                v = Expression.div(l, r, n.column);
+                for (int i = 0; i < count; i++)
+                    work[t + i] = (work[a + i] - v * work[b + i]) / r;
+                return v;
+            case Node.MOD:
+                // l % r = l - q * r (q는 몫을 0 쪽으로 자른 정수)
+                v = Expression.mod(l, r, n.column);
+                double q = Math.rint((l - v) / r);
+                for (int i = 0; i < count; i++)
+                    work[t + i] = work[a + i] - q * work[b + i];
+                return v;
+            case Node.POW:
+                v = Power.pow(l, r);
+                // d(l^r) = r * l^(r-1) * dl + l^r * ln(l) * dr
+                // 한쪽이 상수인 흔한 경우에 0 * 무한대나 음수의 로그로 NaN이 생기지 않도록 0인 항은 더하지 않는다.
+                double dl = r * Power.pow(l, r - 1.0);
+                double dr = v * Math.log(l);
+                for (int i = 0; i < count; i++)
+                {
+                    double da = work[a + i], db = work[b + i];
+                    work[t + i] = (da == 0.0 ? 0.0 : dl * da) + (db == 0.0 ? 0.0 : dr * db);
+                }
+                return v;
+            default:
+                throw new IllegalStateException("Unknown node " + n.op);
+        }
+    }
+
+    // 리듀스 연산. 인덱스를 차례로 돌면서 값과 미분 값을 함께 모은다. 범위(lo, hi)에 대한 미분은 0이다.
+    // 값은 Reduction.Serial이 Reduction.reduce()와 같은 순서로 합치므로 Expression.evaluate()와 같다.
+    private double reduce(Node n, double[] vars, double[] work, int at) throws ParserException
+    {
+        int t = at * count;
+        int c = t + count; // 본문의 미분 값 칸
+
+        double lo = Expression.eval(n.left, vars);
+        double hi = Expression.eval(n.right, vars);
+        long steps = Reduction.steps(n, lo, hi);
+        Reduction.Serial value = new Reduction.Serial(n.op, steps);
+
+        double[] frame = vars.clone();
+        double acc = 0.0; // PRODUCT: 지금까지의 곱, MIN, MAX: 지금까지 고른 값
+        boolean first = true;
+        Arrays.fill(work, t, t + count, 0.0);
+
+        for (long k = 0; k < steps; k++)
+        {
+            frame[n.slot] = lo + k;
+            double x = eval(n.body, frame, work, at + 1);
+            value.add(x);
+            switch (n.op)
+            {
+                case Node.SUM:
+                    for (int i = 0; i < count; i++)
+                        work[t + i] += work[c + i];
+                    break;
+                case Node.PRODUCT:
+                    // (p * x)' = p' * x + p * x'
+                    if (first)
+                        acc = 1.0;
+                    for (int i = 0; i < count; i++)
+                        work[t + i] = work[t + i] * x + acc * work[c + i];
+                    acc *= x;
+                    break;
+                case Node.MIN:
+                case Node.MAX:
+                    if (first || (n.op == Node.MIN ? x < acc : x > acc))
+                    {
+                        acc = x;
+                        System.arraycopy(work, c, work, t, count);
+                    }
+                    break;
+            }
+            first = false;
+        }
+        return value.value();
+    }
+
+    private static int height(Node n)
+    {
+        if (n == null)
+            return 0;
+        return 1 + Math.max(height(n.left), Math.max(height(n.right), height(n.body)));
+    }
+}
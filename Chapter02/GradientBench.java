@@ -0,0 +1,165 @@
+// 차분으로 구한 미분과 Gradient(자동 미분)로 구한 미분의 속도와 정확도 비교
+// java GradientBench [반복 횟수]
+class GradientBench
+{
+    public static void main(String[] args) throws ParserException
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Parser p = new Parser();
+        Expression[] compiled = new Expression[CompileBench.FORMULAS.length];
+        Gradient[] gradients = new Gradient[compiled.length];
+        double[][] bindings = new double[compiled.length][];
+
+        double worst = 0.0;
+        for (int i = 0; i < compiled.length; i++)
+        {
+            compiled[i] = p.compile(CompileBench.FORMULAS[i]);
+            gradients[i] = new Gradient(compiled[i]);
+            bindings[i] = CompileBench.bind(compiled[i]);
+
+            // 값은 evaluate()와 같아야 하고, 미분은 중앙 차분과 가까워야 한다.
+            double[] g = new double[bindings[i].length];
+            double[] d = new double[g.length];
+            if (gradients[i].evaluate(bindings[i], g) != compiled[i].evaluate(bindings[i]))
+                throw new IllegalStateException("Mismatch: " + CompileBench.FORMULAS[i]);
+            difference(compiled[i], bindings[i], d);
+            for (int k = 0; k < g.length; k++)
+                worst = Math.max(worst, Math.abs(g[k] - d[k]) / Math.max(1.0, Math.abs(g[k])));
+        }
+        System.out.printf("max relative difference from central difference: %.3g%n", worst);
+        checkReductions(p);
+
+        // JIT 컴파일이 끝나도록 먼저 한 번씩 돌린다.
+        runDifference(compiled, bindings, rounds);
+        runGradient(gradients, bindings, rounds);
+
+        long t0 = System.nanoTime();
+        double s1 = runDifference(compiled, bindings, rounds);
+        long t1 = System.nanoTime();
+        double s2 = runGradient(gradients, bindings, rounds);
+        long t2 = System.nanoTime();
+
+        long calls = (long) rounds * compiled.length;
+        System.out.printf("central difference : %8.1f ns/op (checksum %s)%n", (t1 - t0) / (double) calls, s1);
+        System.out.printf("Gradient           : %8.1f ns/op (checksum %s)%n", (t2 - t1) / (double) calls, s2);
+        System.out.printf("speedup            : %8.1fx%n", (t1 - t0) / (double) (t2 - t1));
+
+        // 뉴턴 방법으로 x^3 - 2 * x - 5 = 0을 푼다.
+        Expression f = p.compile("x ^ 3 - 2 * x - 5");
+        newton("central difference", f, false);
+        newton("Gradient", f, true);
+    }
+
+    // 변수마다 두 번씩 더 계산하는 중앙 차분
+    static double difference(Expression e, double[] vars, double[] grad) throws ParserException
+    {
+        double[] x = vars.clone();
+        for (int k = 0; k < grad.length; k++)
+        {
+            double h = 1e-6 * Math.max(1.0, Math.abs(vars[k]));
+            x[k] = vars[k] + h;
+            double up = e.evaluate(x);
+            x[k] = vars[k] - h;
+            double down = e.evaluate(x);
+            x[k] = vars[k];
+            grad[k] = (up - down) / (2 * h);
+        }
+        return e.evaluate(vars);
+    }
+
+    static double runDifference(Expression[] compiled, double[][] bindings, int rounds) throws ParserException
+    {
+        double sum = 0.0;
+        for (int r = 0; r < rounds; r++)
+            for (int i = 0; i < compiled.length; i++)
+            {
+                double[] grad = new double[bindings[i].length];
+                sum += difference(compiled[i], bindings[i], grad) + grad[0];
+            }
+        return sum;
+    }
+
+    static double runGradient(Gradient[] gradients, double[][] bindings, int rounds) throws ParserException
+    {
+        double sum = 0.0;
+        for (int r = 0; r < rounds; r++)
+            for (int i = 0; i < gradients.length; i++)
+            {
+                double[] grad = new double[bindings[i].length];
+                sum += gradients[i].evaluate(bindings[i], grad) + grad[0];
+            }
+        return sum;
+    }
+
+    // 여러 조각으로 나뉘는 리듀스 연산의 값도 evaluate()와 비트 단위로 같아야 하고,
+    // 인덱스 개수가 long 범위를 넘는 범위는 0이 되지 않고 리듀스 연산의 위치에서 에러가 나야 한다.
+    static void checkReductions(Parser p) throws ParserException
+    {
+        String[] formulas = { "sum(i, 1, 10000, x / i)", "product(i, 1, 9000, 1 + x / i ^ 2)",
+                              "min(i, 0, 5000, (x - i / 1000) ^ 2)", "max(i, 0, 5000, x * i - i ^ 1.5)" };
+        double[] x = { 1.5 };
+        double[] grad = new double[1];
+        for (String formula : formulas)
+        {
+            Expression e = p.compile(formula);
+            if (new Gradient(e).evaluate(x, grad) != e.evaluate(x))
+                throw new IllegalStateException("Mismatch: " + formula);
+        }
+
+        String[] huge = { "sum(i, 0, 1e19, 1)", "sum(i, 0, 9.3e18, 1)", "sum(i, 0, 4294967296, 1)", "product(i, -1e308, 1e308, 1)" };
+        for (String formula : huge)
+        {
+            expectRangeError(formula, () -> p.evaluate("2 + " + formula));
+            Expression e = p.compile("2 + " + formula);
+            expectRangeError(formula, () -> e.evaluate());
+            expectRangeError(formula, () -> new Gradient(e).evaluate(new double[0], new double[0]));
+        }
+    }
+
+    interface Evaluation
+    {
+        double run() throws ParserException;
+    }
+
+    static void expectRangeError(String formula, Evaluation evaluation)
+    {
+        try
+        {
+            double v = evaluation.run();
+            throw new IllegalStateException("No error: " + formula + " = " + v);
+        }
+        catch (ParserException exc)
+        {
+            if (!exc.toString().equals("Range Too Large at column 5"))
+                throw new IllegalStateException("Wrong error: " + formula + ": " + exc);
+        }
+    }
+
+    static void newton(String name, Expression f, boolean exact) throws ParserException
+    {
+        Gradient g = new Gradient(f);
+        double[] x = { 10.0 };
+        double[] grad = new double[1];
+        int evaluations = 0;
+        int steps = 0;
+        double fx;
+
+        do
+        {
+            if (exact)
+            {
+                fx = g.evaluate(x, grad);
+                evaluations++;
+            }
+            else
+            {
+                fx = difference(f, x, grad);
+                evaluations += 3;
+            }
+            x[0] -= fx / grad[0];
+            steps++;
+        } while (Math.abs(fx) > 1e-12 && steps < 100);
+
+        System.out.printf("newton (%s): x = %.15f after %d steps, %d evaluations%n", name, x[0], steps, evaluations);
+    }
+}
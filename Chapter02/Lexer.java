@@ -0,0 +1,253 @@
+/*
+    이 모듈은 Parser, Simple/Parser, StringParser가 함께 사용하는 토큰 분석기를 포함한다.
+    토큰을 문자열로 만들지 않고 표현식 안의 (타입, 시작, 끝) 위치로만 기록한다.
+    표현식은 CharSequence이면 되므로 매핑한 파일의 바이트(ByteChars)도 문자열로 바꾸지 않고 분석할 수 있다.
+    비교, 논리, 조건 연산자 문자(<>!&|?:)는 Lexer(strings, true)로 만든 분석기만 연산자로 본다.
+    (Parser, StackParser만 지원하므로 Simple/Parser와 StringParser의 토큰 분석은 바뀌지 않는다.)
+ */
+
+class Lexer
+{
+    // 토큰 타입 상수값 (각 파서의 상수와 같은 값)
+    static final int NONE = 0; // 표현식의 끝(EOE)
+    static final int DELIMITER = 1;
+    static final int VARIABLE = 2;
+    static final int NUMBER = 3;
+    static final int STRING = 4;
+
+    // 두 글자 연산자는 op에 아래의 문자 하나로 넣는다. (SBasic의 LE, GE, NE와 같은 방법)
+    static final char LE = 1;  // <=
+    static final char GE = 2;  // >=
+    static final char NE = 3;  // !=
+    static final char EQ = 4;  // ==
+    static final char AND = 5; // &&
+    static final char OR = 6;  // ||
+
+    // 문자 종류 플래그
+    private static final byte DELIM = 1;  // 연산자(일반 연산자, 괄호, 쉼표, 스페이스)
+    private static final byte SPACE = 2;  // 공백
+    private static final byte LETTER = 4; // 문자
+    private static final byte DIGIT = 8;  // 숫자
+    private static final byte LOGIC = 16; // 비교, 논리, 조건 연산자. 이를 지원하는 파서만 연산자로 인식한다.
+
+    // ASCII 문자에 대한 문자 종류 테이블
+    private static final byte[] CHARCLASS = new byte[128];
+
+    static
+    {
+        for (char c = 0; c < 128; c++)
+        {
+            if (" +-/*%^=(),".indexOf(c) != -1)
+                CHARCLASS[c] |= DELIM;
+            if ("<>!&|?:".indexOf(c) != -1)
+                CHARCLASS[c] |= LOGIC;
+            if (Character.isWhitespace(c))
+                CHARCLASS[c] |= SPACE;
+            if (Character.isLetter(c))
+                CHARCLASS[c] |= LETTER;
+            if (Character.isDigit(c))
+                CHARCLASS[c] |= DIGIT;
+        }
+    }
+
+    private final boolean strings; // 따옴표로 둘러싼 문자열을 토큰으로 인식할지 여부
+    private final boolean logical; // 비교, 논리, 조건 연산자(<, <=, ==, &&, ?, : 등)를 인식할지 여부
+    private final int delims;      // 연산자로 보는 문자 종류 플래그
+
+    CharSequence exp; // 표현식 문자열
+    int expIdx;       // 표현식의 현재 인덱스
+
+    int type;         // 현재 토큰의 타입
+    char op;          // 현재 토큰이 연산자이면 그 문자, 아니면 '\0'
+    int start;        // 현재 토큰의 시작 인덱스 (문자열은 따옴표 안쪽)
+    int end;          // 현재 토큰의 끝 인덱스 (포함하지 않음)
+    int tokStart;     // 현재 토큰이 시작된 인덱스 (문자열은 여는 따옴표)
+
+    Lexer(boolean strings)
+    {
+        this(strings, false);
+    }
+
+    Lexer(boolean strings, boolean logical)
+    {
+        this.strings = strings;
+        this.logical = logical;
+        this.delims = logical ? DELIM | LOGIC : DELIM;
+    }
+
+    // 새 표현식을 분석하도록 초기화한다.
+    void reset(CharSequence expstr)
+    {
+        exp = expstr;
+        expIdx = 0;
+        type = NONE;
+        op = '\0';
+    }
+
+    // 주어진 위치부터 다시 분석한다.
+    void rewind(int idx)
+    {
+        expIdx = idx;
+    }
+
+    // 다음 토큰을 읽는다.
+    void next()
+    {
+        int len = exp.length();
+        char c;
+
+        type = NONE;
+        op = '\0';
+
+        // 공백을 넘어간다.
+        while (expIdx < len && isSpace(exp.charAt(expIdx)))
+            ++expIdx;
+
+        tokStart = start = end = expIdx;
+
+        // 표현의 마지막인지 확인한다.
+        if (expIdx == len)
+            return;
+
+        c = exp.charAt(expIdx);
+        int cls = charClass(c);
+
+        if ((cls & delims) != 0) // 연산자
+        {
+            op = c;
+            expIdx++;
+            type = DELIMITER;
+
+            // 두 글자 연산자
+            char c2 = expIdx < len ? exp.charAt(expIdx) : '\0';
+            char two = logical ? pair(c, c2) : '\0';
+            if (two != '\0')
+            {
+                op = two;
+                expIdx++;
+            }
+        }
+        else if ((cls & LETTER) != 0) // 변수형
+        {
+            skipToDelim();
+            type = VARIABLE;
+        }
+        else if ((cls & DIGIT) != 0) // 숫자형
+        {
+            skipToDelim();
+            type = NUMBER;
+        }
+        else if (strings && c == '"') // 문자열형
+        {
+            // 여는 따옴표는 넘어감
+            start = ++expIdx;
+            while (expIdx < len && exp.charAt(expIdx) != '"')
+                expIdx++;
+            end = expIdx;
+            if (expIdx < len)
+                expIdx++; // 닫는 따옴표 넘어감
+            type = STRING;
+            return;
+        }
+        // 기타 정의되지 않은 형이라면 표현식이 종료된 것으로 간주한다. (atEnd()는 false)
+        end = expIdx;
+    }
+
+    // 표현식을 끝까지 읽었는지 확인한다. 정의되지 않은 문자에서 멈춘 경우는 false이다.
+    boolean atEnd()
+    {
+        return type == NONE && tokStart == exp.length();
+    }
+
+    // c 다음에 c2가 오는 두 글자 연산자의 op 문자. 두 글자 연산자가 아니면 '\0'
+    private static char pair(char c, char c2)
+    {
+        switch (c)
+        {
+            case '<':
+                return c2 == '=' ? LE : '\0';
+            case '>':
+                return c2 == '=' ? GE : '\0';
+            case '!':
+                return c2 == '=' ? NE : '\0';
+            case '=':
+                return c2 == '=' ? EQ : '\0';
+            case '&':
+                return c2 == '&' ? AND : '\0';
+            case '|':
+                return c2 == '|' ? OR : '\0';
+            default:
+                return '\0';
+        }
+    }
+
+    // 현재 토큰의 문자열을 반환한다. 변수 이름이나 문자열 값이 필요할 때만 사용한다.
+    String text()
+    {
+        return exp.subSequence(start, end).toString();
+    }
+
+    // 현재 토큰이 word인지 대소문자를 구분하지 않고 비교한다.
+    boolean is(String word)
+    {
+        if (end - start != word.length())
+            return false;
+        for (int i = 0; i < word.length(); i++)
+            if (Character.toLowerCase(exp.charAt(start + i)) != Character.toLowerCase(word.charAt(i)))
+                return false;
+        return true;
+    }
+
+    // 다음 토큰의 첫 글자를 읽지 않고 미리 본다. 표현식의 끝이면 '\0'을 반환한다.
+    char peek()
+    {
+        int i = expIdx;
+        while (i < exp.length() && isSpace(exp.charAt(i)))
+            i++;
+        return i < exp.length() ? exp.charAt(i) : '\0';
+    }
+
+    // 현재 NUMBER 토큰의 값을 구한다. 숫자 형식이 아니면 NumberFormatException을 발생시킨다.
+    // 토큰을 문자열로 만들지 않고 NumberParser가 표현식에서 바로 읽는다.
+    double number()
+    {
+        return NumberParser.parse(exp, start, end);
+    }
+
+    // 연산자가 나올 때까지 넘어간다.
+    private void skipToDelim()
+    {
+        int len = exp.length();
+        while (expIdx < len && !isDelim(exp.charAt(expIdx)))
+            expIdx++;
+        end = expIdx;
+    }
+
+    // 문자 종류 플래그를 구한다.
+    private static int charClass(char c)
+    {
+        if (c < 128)
+            return CHARCLASS[c];
+
+        int cls = 0;
+        if (Character.isWhitespace(c))
+            cls |= SPACE;
+        if (Character.isLetter(c))
+            cls |= LETTER;
+        if (Character.isDigit(c))
+            cls |= DIGIT;
+        return cls;
+    }
+
+    // true가 리턴되면 c는 이 분석기가 연산자(일반 연산자, 괄호, 쉼표, 스페이스와 logical이면 비교, 논리, 조건 연산자)로 보는 문자이다.
+    boolean isDelim(char c)
+    {
+        return c < 128 && (CHARCLASS[c] & delims) != 0;
+    }
+
+    // true가 리턴되면 c는 공백 문자이다.
+    static boolean isSpace(char c)
+    {
+        return (charClass(c) & SPACE) != 0;
+    }
+}
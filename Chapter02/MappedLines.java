@@ -0,0 +1,121 @@
+/*
+    이 모듈은 한 줄에 표현식 하나씩 들어 있는 파일을 메모리에 매핑해서 읽는 입력을 포함한다.
+    파일을 줄 경계에서 끝나는 영역으로 나눠 차례로 매핑하고, 각 줄은 매핑된 바이트를 가리키는
+    ByteChars로 파서에 넘기므로 줄마다 String을 만들거나 문자를 복사하지 않는다.
+    표현식은 ASCII 문자로 이루어져 있다고 본다. (다른 바이트는 같은 값의 Latin-1 문자로 읽는다.)
+ */
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+class MappedLines implements Closeable
+{
+    // 한 영역의 기본 크기. 영역 하나가 작업자 하나에게 넘어가는 작업 단위가 된다.
+    static final int REGION = 4 << 20;
+
+    private final FileChannel ch;
+    private final long size;
+    private long pos; // 아직 넘겨주지 않은 첫 바이트의 위치
+
+    MappedLines(Path file) throws IOException
+    {
+        ch = FileChannel.open(file, StandardOpenOption.READ);
+        size = ch.size();
+    }
+
+    // 다음 영역을 매핑한다. 영역은 온전한 줄들로만 이루어지며, 파일 끝이면 null을 반환한다.
+    // 한 줄이 REGION보다 길면 그 줄이 끝날 때까지 영역을 늘린다.
+    ByteBuffer next() throws IOException
+    {
+        if (pos >= size)
+            return null;
+
+        long length = Math.min(REGION, size - pos);
+        for (;;)
+        {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            int end = (int) length;
+            if (pos + length < size)
+            {
+                // 마지막 줄 바꿈 뒤의 잘린 줄은 다음 영역으로 넘긴다.
+                while (end > 0 && buf.get(end - 1) != '\n')
+                    end--;
+                if (end == 0)
+                {
+                    if (length > Integer.MAX_VALUE / 2)
+                        throw new IOException("Line at byte " + pos + " is too long");
+                    length = Math.min(length * 2, size - pos);
+                    continue;
+                }
+            }
+            pos += end;
+            return buf.limit(end);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        ch.close();
+    }
+}
+
+// 바이트 버퍼의 일부를 문자 시퀀스로 보는 뷰. 바이트 하나가 문자 하나이다.
+// set()으로 가리키는 범위를 바꿔 가며 재사용한다.
+final class ByteChars implements CharSequence
+{
+    private ByteBuffer buf;
+    private int offset;
+    private int length;
+
+    ByteChars()
+    {
+    }
+
+    ByteChars(ByteBuffer buf, int offset, int length)
+    {
+        set(buf, offset, length);
+    }
+
+    // buf의 [offset, offset + length) 범위를 가리키도록 바꾼다.
+    ByteChars set(ByteBuffer buf, int offset, int length)
+    {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length)
+            throw new StringIndexOutOfBoundsException(index);
+        return (char) (buf.get(offset + index) & 0xFF);
+    }
+
+    // 같은 버퍼를 가리키는 새 뷰 (에러 처리와 같이 드문 경우에만 사용된다.)
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > length || start > end)
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        return new ByteChars(buf, offset + start, end - start);
+    }
+
+    @Override
+    public String toString()
+    {
+        byte[] bytes = new byte[length];
+        buf.get(offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -1,12 +1,15 @@
 /*
 파서 소스
  */
+import java.util.*;
 
 // 에러 처리를 위한 Exception 클래스
 class ParserException extends Exception {
     String errStr; // 에러 기술
 
+    // 스택 추적은 만들지 않는다. 에러 메시지만 알리면 된다.
     public ParserException(String str) {
+        super(str, null, false, false);
         errStr = str;
     }
 
@@ -15,6 +18,314 @@ class ParserException extends Exception {
     }
 }
 
+// StringParser의 계산 결과 (숫자 또는 문자열)
+// 숫자는 double 그대로 두므로 연산할 때마다 문자열로 바꾸고 다시 읽지 않는다.
+final class Value {
+    // 문자열이 숫자 형식인지 여부
+    private static final int UNKNOWN = 0;
+    private static final int NUMERIC = 1;
+    private static final int TEXT = 2;
+
+    /* 숫자 형식은 Double.parseDouble()이 받아들이는 형식(Double.valueOf() 문서의 정규식)이다.
+         [\x00-\x20]* [+-]? (NaN | Infinity | ((10진수 | 0x16진수 p지수) [fFdD]?)) [\x00-\x20]*
+       이를 아래 상태의 오토마타로 읽는다. 값마다 "각 상태에서 시작해서 이 문자열을 읽으면 옮겨 가는 상태"의 표를 두면,
+       이어 붙인 값의 표는 두 표를 합성해서 바로 구할 수 있으므로 숫자 형식인지 알려고 문자열을 펼치지 않아도 된다. */
+    private static final int START = 0;         // 앞 공백
+    private static final int SIGN = 1;          // 부호 뒤
+    private static final int NAN = 2;           // "NaN"의 앞 1, 2글자 (NAN, NAN + 1)
+    private static final int INFINITY = 4;      // "Infinity"의 앞 1..7글자 (INFINITY..INFINITY + 6)
+    private static final int WORD = 11;         // NaN, Infinity 뒤
+    private static final int ZERO = 12;         // 0 (0x가 될 수 있다.)
+    private static final int INT = 13;          // 정수 부분
+    private static final int POINT = 14;        // 정수 부분 없이 . 뒤
+    private static final int INT_POINT = 15;    // 정수 부분과 . 뒤
+    private static final int FRAC = 16;         // 소수 부분
+    private static final int EXP = 17;          // e 뒤
+    private static final int EXP_SIGN = 18;     // e의 부호 뒤
+    private static final int EXP_DIGITS = 19;   // 지수
+    private static final int SUFFIX = 20;       // f, F, d, D 뒤
+    private static final int HEX = 21;          // 0x 뒤
+    private static final int HEX_INT = 22;      // 16진수 정수 부분
+    private static final int HEX_POINT = 23;    // 0x. 뒤
+    private static final int HEX_INT_POINT = 24; // 16진수 정수 부분과 . 뒤
+    private static final int HEX_FRAC = 25;     // 16진수 소수 부분
+    private static final int HEX_EXP = 26;      // p 뒤
+    private static final int HEX_EXP_SIGN = 27; // p의 부호 뒤
+    private static final int HEX_EXP_DIGITS = 28; // 2진 지수
+    private static final int END = 29;          // 뒤 공백
+    private static final int DEAD = 30;         // 숫자 형식이 될 수 없음
+    private static final int STATES = 31;
+
+    // 모든 상태가 DEAD로 가는 표. 숫자에 나올 수 없는 문자가 있는 값은 모두 이 표를 함께 쓴다.
+    private static final byte[] ALL_DEAD = new byte[STATES];
+
+    // 숫자 형식에 나올 수 있는 문자 (공백, 부호, 16진수, 지수, NaN, Infinity, 접미사)
+    // 이 밖의 문자가 있는 문자열은 오토마타로 읽지 않고 바로 ALL_DEAD로 한다.
+    private static final String NUMBER_CHARS = "+-.0123456789abcdefABCDEFxXpPNInity";
+
+    // 상태와 ASCII 문자에 대한 다음 상태 (NEXT[상태 * 128 + 문자])
+    private static final byte[] NEXT = new byte[STATES * 128];
+
+    static {
+        Arrays.fill(ALL_DEAD, (byte) DEAD);
+        for (int s = 0; s < STATES; s++)
+            for (char c = 0; c < 128; c++)
+                NEXT[s * 128 + c] = (byte) step(s, c);
+    }
+
+    private String str;        // 문자열 값. 숫자이면 null, 아직 펼치지 않은 이어 붙이기도 null
+    private Value left, right; // 아직 펼치지 않은 이어 붙이기의 앞, 뒤 부분
+    private final int length;  // 문자열의 길이
+    private final byte[] moves; // 문자열 값을 상태 i에서 읽으면 moves[i] 상태가 된다. (숫자는 null)
+    private double num;        // 숫자 값. 문자열이면 숫자 형식일 때 읽은 값
+    private int kind;          // 문자열이 숫자 형식인지 (처음 물어볼 때 한 번만 읽는다.)
+
+    private Value(double num, String str, int kind) {
+        this.num = num;
+        this.str = str;
+        this.kind = kind;
+        this.length = str == null ? 0 : str.length();
+        this.moves = str == null ? null : moves(str);
+    }
+
+    private Value(Value left, Value right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+        this.moves = compose(left.moves, right.moves);
+    }
+
+    static Value of(double num) {
+        return new Value(num, null, NUMERIC);
+    }
+
+    static Value of(String str) {
+        return new Value(0.0, str, UNKNOWN);
+    }
+
+    // 두 값을 문자열로 이어 붙인다. 새 문자열을 만들지 않고 두 값을 가리키는 노드(rope)만 만들며,
+    // 실제 문자열은 toString()으로 처음 필요할 때 한 번에 만든다.
+    // 이전처럼 값이 null이면 "null"을 잇는다.
+    static Value concat(Value a, Value b) {
+        a = text(a);
+        b = text(b);
+        if (a.length == 0)
+            return b;
+        if (b.length == 0)
+            return a;
+        int length = a.length + b.length;
+        if (length < 0)
+            throw new OutOfMemoryError("String length out of range");
+        return new Value(a, b, length);
+    }
+
+    // 이어 붙일 문자열 값. 숫자는 여기서 한 번만 문자열로 바꾼다.
+    private static Value text(Value v) {
+        if (v == null)
+            return of("null");
+        if (v.str == null && v.left == null)
+            return of(String.valueOf(v.num));
+        return v;
+    }
+
+    // 숫자로 계산할 수 있으면 true. 숫자 형식의 문자열("5" 등)도 이전처럼 숫자로 계산한다.
+    boolean isNumber() {
+        if (kind == UNKNOWN) {
+            // 숫자 형식인지는 표로 알 수 있다. 문자열은 숫자 형식일 때 값을 읽으려고만 펼친다.
+            int state = moves[START];
+            if (state == WORD || state == ZERO || state == INT || state == INT_POINT || state == FRAC
+                    || state == EXP_DIGITS || state == SUFFIX || state == HEX_EXP_DIGITS || state == END) {
+                num = Double.parseDouble(toString());
+                kind = NUMERIC;
+            } else
+                kind = TEXT;
+        }
+        return kind == NUMERIC;
+    }
+
+    // isNumber()가 true일 때의 숫자 값
+    double number() {
+        return num;
+    }
+
+    // 나중에 필요할 값(숫자 형식 여부, 이어 붙인 문자열)을 미리 계산해 둔다.
+    // 이후로는 값이 바뀌지 않으므로 여러 스레드가 함께 읽을 수 있다.
+    Value settle() {
+        isNumber();
+        if (str == null && left != null)
+            flatten();
+        return this;
+    }
+
+    // 문자열 값. 숫자는 String.valueOf()로 바꾼다.
+    public String toString() {
+        if (str == null) {
+            if (left == null)
+                return String.valueOf(num);
+            flatten();
+        }
+        return str;
+    }
+
+    // 이어 붙이기 트리의 조각들을 왼쪽부터 차례로 복사한다.
+    // 트리가 아주 깊을 수 있으므로 재귀 호출 대신 스택을 사용한다.
+    private void flatten() {
+        char[] buf = new char[length];
+        int pos = 0;
+        ArrayDeque<Value> stack = new ArrayDeque<>();
+
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            Value v = stack.pop();
+            if (v.str != null) {
+                v.str.getChars(0, v.length, buf, pos);
+                pos += v.length;
+            } else {
+                stack.push(v.right);
+                stack.push(v.left);
+            }
+        }
+        str = new String(buf);
+        left = right = null; // 조각들은 더 이상 필요 없다.
+    }
+
+    // 문자열을 각 상태에서 읽었을 때 옮겨 가는 상태의 표를 만든다.
+    private static byte[] moves(String s) {
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c > ' ' && NUMBER_CHARS.indexOf(c) == -1)
+                return ALL_DEAD;
+        }
+
+        byte[] moves = new byte[STATES];
+        for (int i = 0; i < STATES; i++)
+            moves[i] = (byte) i;
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k); // NUMBER_CHARS와 공백만 남았으므로 ASCII이다.
+            boolean live = false;
+            for (int i = 0; i < STATES; i++) {
+                moves[i] = NEXT[moves[i] * 128 + c];
+                live |= moves[i] != DEAD;
+            }
+            if (!live)
+                return ALL_DEAD;
+        }
+        return moves;
+    }
+
+    // 앞 문자열의 표 a와 뒤 문자열의 표 b로 이어 붙인 문자열의 표를 만든다.
+    private static byte[] compose(byte[] a, byte[] b) {
+        if (a == ALL_DEAD || b == ALL_DEAD)
+            return ALL_DEAD;
+        byte[] moves = new byte[STATES];
+        boolean live = false;
+        for (int i = 0; i < STATES; i++) {
+            moves[i] = b[a[i]];
+            live |= moves[i] != DEAD;
+        }
+        return live ? moves : ALL_DEAD;
+    }
+
+    // 상태 s에서 문자 c를 읽은 다음 상태 (NEXT 표를 만들 때 쓴다.)
+    // 앞 상태와 같이 처리하는 상태는 다음 case로 이어지게(fall-through) 썼다.
+    @SuppressWarnings("fallthrough")
+    private static int step(int s, char c) {
+        boolean space = c <= ' ';
+        boolean digit = c >= '0' && c <= '9';
+        boolean hex = digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        boolean suffix = c == 'f' || c == 'F' || c == 'd' || c == 'D';
+        boolean sign = c == '+' || c == '-';
+
+        if (s >= NAN && s < NAN + 2) {
+            if (c != "NaN".charAt(s - NAN + 1))
+                return DEAD;
+            return s == NAN + 1 ? WORD : s + 1;
+        }
+        if (s >= INFINITY && s < INFINITY + 7) {
+            if (c != "Infinity".charAt(s - INFINITY + 1))
+                return DEAD;
+            return s == INFINITY + 6 ? WORD : s + 1;
+        }
+
+        switch (s) {
+            case START:
+                if (space)
+                    return START;
+                if (sign)
+                    return SIGN;
+                // 부호가 없으면 SIGN과 같다.
+            case SIGN:
+                if (c == 'N')
+                    return NAN;
+                if (c == 'I')
+                    return INFINITY;
+                if (c == '0')
+                    return ZERO;
+                if (digit)
+                    return INT;
+                return c == '.' ? POINT : DEAD;
+            case ZERO:
+                if (c == 'x' || c == 'X')
+                    return HEX;
+                // 0x가 아니면 INT와 같다.
+            case INT:
+                if (digit)
+                    return INT;
+                if (c == '.')
+                    return INT_POINT;
+                // 정수 뒤에는 소수 부분 뒤와 같이 지수, 접미사, 공백이 올 수 있다.
+            case INT_POINT:
+            case FRAC:
+                if (digit)
+                    return FRAC;
+                if (c == 'e' || c == 'E')
+                    return EXP;
+                // 지수가 없으면 지수 뒤와 같이 접미사와 공백이 올 수 있다.
+            case SUFFIX:
+                if (s != SUFFIX && suffix)
+                    return SUFFIX;
+            case WORD:
+            case END:
+                return space ? END : DEAD;
+            case POINT:
+                return digit ? FRAC : DEAD;
+            case EXP:
+            case HEX_EXP:
+                if (sign)
+                    return s + 1;
+            case EXP_SIGN:
+            case HEX_EXP_SIGN:
+                return digit ? (s <= EXP_SIGN ? EXP_DIGITS : HEX_EXP_DIGITS) : DEAD;
+            case EXP_DIGITS:
+            case HEX_EXP_DIGITS:
+                if (digit)
+                    return s;
+                if (suffix)
+                    return SUFFIX;
+                return space ? END : DEAD;
+            case HEX:
+                if (hex)
+                    return HEX_INT;
+                return c == '.' ? HEX_POINT : DEAD;
+            case HEX_INT:
+                if (hex)
+                    return HEX_INT;
+                if (c == '.')
+                    return HEX_INT_POINT;
+                return c == 'p' || c == 'P' ? HEX_EXP : DEAD;
+            case HEX_POINT:
+                return hex ? HEX_FRAC : DEAD;
+            case HEX_INT_POINT:
+            case HEX_FRAC:
+                if (hex)
+                    return HEX_FRAC;
+                return c == 'p' || c == 'P' ? HEX_EXP : DEAD;
+            default:
+                return DEAD;
+        }
+    }
+}
+
 class StringParser {
     // 토큰 타입 상수값
     final int NONE = 0;
@@ -29,57 +340,184 @@ class StringParser {
     final int NOEXP = 2;
     final int DIVBYZERO = 3;
 
-    // 문자열의 끝을 나타내는 상수
-    final String EOE = "\0";
+    // 토큰 분석기. 따옴표 문자열도 토큰으로 인식한다.
+    private final Lexer lex = new Lexer(true);
 
-    private String exp;   // 표현식 문자열
-    private int expIdx;   // 현재 인덱스 값
-    private String token; // 현재 토큰값
-    private int tokType;  // 현재 토큰값의 타입
-
-    // 변수를 위한 배열
-    private String vars[] = new String[26];
+    // 변수 기호표. 변수 이름(대소문자 구분 없음)마다 0부터 차례로 번호(slot)를 매기고,
+    // 값은 번호를 인덱스로 하는 배열에 둔다.
+    // 번호는 번호 + 1을 넣는 개방 주소 해시 표(0은 빈 칸)로 찾는다. 표현식 안의 토큰 범위를 names와 바로 비교하므로
+    // 변수를 읽을 때마다 이름 문자열을 만들지 않는다.
+    private int[] table = new int[32];
+    private String[] names = new String[16];
+    private Value[] values = new Value[16];
+    private int count;
 
     public String evaluate(String expstr) throws ParserException {
-        String result;
-        exp = expstr;
-        expIdx = 0;
+        Value result;
+        lex.reset(expstr);
 
         getToken();
-        if (token.equals(EOE))
+        if (lex.type == NONE)
             handleErr(NOEXP); // 표현식이 존재하지 않음
 
         // 표현을 파싱하고 값을 구한다.
         result = evalExp1();
 
-        if (!token.equals(EOE)) // 문자열의 마지막은 EOE이어야 한다.
+        if (lex.type != NONE) // 문자열의 마지막은 EOE이어야 한다.
             handleErr(SYNTAX);
 
-        return result;
+        // 숫자는 마지막에 한 번만 문자열로 바꾼다.
+        return result == null ? null : result.toString();
+    }
+
+    // 표현식을 한 번만 파싱해서 반복해서 계산할 수 있는 형태로 만든다.
+    // 변수 이름은 여기서 번호로 바뀌므로 계산할 때는 배열 인덱스로만 값을 찾는다.
+    public StringExpression compile(String expstr) throws ParserException {
+        StringNode root;
+        lex.reset(expstr);
+
+        getToken();
+        if (lex.type == NONE)
+            handleErr(NOEXP); // 표현식이 존재하지 않음
+
+        root = compExp1();
+
+        if (lex.type != NONE) // 문자열의 마지막은 EOE이어야 한다.
+            handleErr(SYNTAX);
+
+        return new StringExpression(this, root);
+    }
+
+    // 변수의 번호를 반환한다. 처음 보는 이름이면 새 번호를 매긴다.
+    public int slotOf(String name) {
+        return slotOf(name, 0, name.length());
+    }
+
+    // s의 start부터 end - 1까지의 이름에 해당하는 번호. 처음 보는 이름일 때만 이름 문자열을 만든다.
+    private int slotOf(CharSequence s, int start, int end) {
+        int slot = lookup(s, start, end);
+        if (slot != -1)
+            return slot;
+
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        names[count] = s.subSequence(start, end).toString();
+        insert(count);
+        if (++count * 2 > table.length) {
+            // 표가 반 넘게 차면 두 배로 늘린다.
+            table = new int[table.length * 2];
+            for (int i = 0; i < count; i++)
+                insert(i);
+        }
+        return count - 1;
+    }
+
+    // s의 start부터 end - 1까지의 이름에 해당하는 번호. 없으면 -1
+    private int lookup(CharSequence s, int start, int end) {
+        int mask = table.length - 1;
+        for (int at = hash(s, start, end) & mask, id; (id = table[at] - 1) >= 0; at = (at + 1) & mask)
+            if (sameName(names[id], s, start, end))
+                return id;
+        return -1;
+    }
+
+    private void insert(int slot) {
+        String name = names[slot];
+        int mask = table.length - 1;
+        int at = hash(name, 0, name.length()) & mask;
+        while (table[at] != 0)
+            at = (at + 1) & mask;
+        table[at] = slot + 1;
+    }
+
+    // 대소문자를 구분하지 않는 해시 값. 같은 이름(sameName())이면 같은 값이다.
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + fold(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    // name과 s의 start부터 end - 1까지가 대소문자를 구분하지 않고 같은지 비교한다.
+    private static boolean sameName(String name, CharSequence s, int start, int end) {
+        if (name.length() != end - start)
+            return false;
+        for (int i = 0; i < name.length(); i++)
+            if (fold(name.charAt(i)) != fold(s.charAt(start + i)))
+                return false;
+        return true;
+    }
+
+    // 대소문자를 구분하지 않고 비교할 문자. 이름을 toUpperCase(Locale.ROOT)로 바꿔서 비교하던 것과 같다.
+    // (ß처럼 대문자가 여러 글자가 되는 문자는 그대로 비교한다.)
+    private static char fold(char c) {
+        return Character.toUpperCase(c);
+    }
+
+    // 번호 순서대로의 변수 이름
+    public String[] variables() {
+        return Arrays.copyOf(names, count);
+    }
+
+    // 0번부터 vector.length - 1번까지의 변수 값을 한 번에 정한다.
+    public void bind(double[] vector) {
+        checkSlots(vector.length);
+        for (int i = 0; i < vector.length; i++)
+            values[i] = Value.of(vector[i]);
+    }
+
+    // 숫자(Number)와 문자열이 섞인 값을 한 번에 정한다. null이면 값이 없는 변수가 된다.
+    public void bind(Object[] vector) {
+        checkSlots(vector.length);
+        for (int i = 0; i < vector.length; i++) {
+            Object v = vector[i];
+            if (v == null)
+                values[i] = null;
+            else if (v instanceof Number)
+                values[i] = Value.of(((Number) v).doubleValue());
+            else
+                values[i] = Value.of(v.toString());
+        }
+    }
+
+    // 변수 개수와 번호로 값을 읽고 쓰는 메소드 (Recalc에서 사용)
+    int slotCount() {
+        return count;
     }
 
-    private String evalExp1() throws ParserException 
+    Value value(int slot) {
+        return values[slot];
+    }
+
+    void setValue(int slot, Value v) {
+        values[slot] = v;
+    }
+
+    private void checkSlots(int n) {
+        if (n > count)
+            throw new IllegalArgumentException("Only " + count + " variables are defined");
+    }
+
+    private Value evalExp1() throws ParserException 
     {  
-        String result; 
-        int varIdx;  
-        int ttokType;  
-        String temptoken;  
+        Value result; 
+        int varStart;  
     
-        if(tokType == VARIABLE) {  
-            temptoken = new String(token);  
-            ttokType = tokType;  
+        if(lex.type == VARIABLE) {  
+            varStart = lex.tokStart;  
         
-            varIdx = Character.toUpperCase(token.charAt(0)) - 'A';  
+            int nameStart = lex.start, nameEnd = lex.end; // 이름은 새 변수일 때만 문자열로 만든다.
         
             getToken();  
-            if(!token.equals("=")) {  
-                putBack();
-                token = new String(temptoken);  
-                tokType = ttokType;  
+            if(lex.op != '=') {  
+                putBack(varStart);
             } else {  
                 getToken();
                 result = evalExp2();  
-                vars[varIdx] = result;  
+                int slot = slotOf(lex.exp, nameStart, nameEnd); // 배열이 늘어날 수 있으므로 먼저 번호를 구한다.
+                values[slot] = result;  
                 return result;  
             }  
         }  
@@ -88,135 +526,78 @@ class StringParser {
     }
 
     // 더하거나 뺀다.
-    private String evalExp2() throws ParserException {
+    private Value evalExp2() throws ParserException {
         char op;
-        String result;
-        String partialResult;
+        Value result;
+        Value partialResult;
 
         result = evalExp3();
 
-        while ((op = token.charAt(0)) == '+' || op == '-') {
+        while ((op = lex.op) == '+' || op == '-') {
             getToken();
             partialResult = evalExp3();
-
-            // 문자열 덧셈 처리
-            switch (op) {
-                case '-':
-                    try {
-                        result = String.valueOf(Double.parseDouble(result) - Double.parseDouble(partialResult));
-                    } catch (NumberFormatException e) {
-                        handleErr(SYNTAX);
-                    }
-                    break;
-                case '+':
-                    try {
-                        result = String.valueOf(Double.parseDouble(result) + Double.parseDouble(partialResult));
-                    } catch (NumberFormatException e) {
-                        result = result + partialResult;
-                    }
-                    break;
-            }
+            result = apply(op, result, partialResult);
         }
         return result;
     }
 
     // 곱하거나 나눈다.
-    private String evalExp3() throws ParserException {
+    private Value evalExp3() throws ParserException {
         char op;
-        String result;
-        String partialResult;
+        Value result;
+        Value partialResult;
 
         result = evalExp4();
 
-        while ((op = token.charAt(0)) == '*' || op == '/' || op == '%') {
+        while ((op = lex.op) == '*' || op == '/' || op == '%') {
             getToken();
             partialResult = evalExp4();
-            if (isNumber(result) && isNumber(partialResult)) {
-                switch (op) {
-                    case '*':
-                        result = String.valueOf(Double.parseDouble(result) * Double.parseDouble(partialResult));
-                        break;
-                    case '/':
-                        if (Double.parseDouble(partialResult) == 0.0)
-                            handleErr(DIVBYZERO);
-                        result = String.valueOf(Double.parseDouble(result) / Double.parseDouble(partialResult));
-                        break;
-                    case '%':
-                        if (Double.parseDouble(partialResult) == 0.0)
-                            handleErr(DIVBYZERO);
-                        result = String.valueOf(Double.parseDouble(result) % Double.parseDouble(partialResult));
-                        break;
-                }
-            }
-            else
-                handleErr(SYNTAX);
+            result = apply(op, result, partialResult);
         }
         return result;
     }
 
     // 지수를 처리한다.
-    private String evalExp4() throws ParserException {
-        String result;
-        String partialResult; // 지수
-        int t;
+    private Value evalExp4() throws ParserException {
+        Value result;
+        Value partialResult; // 지수
 
         result = evalExp5();
 
-        if (token.equals("^")) {
+        if (lex.op == '^') {
             getToken();
             partialResult = evalExp4();
-
-            if (isNumber(result) && isNumber(partialResult)) {
-                double ex = Double.parseDouble(result);
-                double base = Double.parseDouble(partialResult);
-
-                if (base == 0.0)
-                    result = "1.0";
-                else {
-                    double res = 1.0;
-                    for (t = (int) ex - 1; t > 0; t--)
-                        res = res * base;
-                }
-            }
-            else
-                handleErr(SYNTAX);
+            result = apply('^', result, partialResult);
         }
         return result;
     }
 
     // 단항의 +, -를 처리한다.
-    private String evalExp5() throws ParserException {
-        String result;
-        String op;
+    private Value evalExp5() throws ParserException {
+        Value result;
+        char op;
 
-        op = "";
-        if ((tokType == DELIMITER) && token.equals("+") || token.equals("-")) {
-            op = token;
+        op = '\0';
+        if (lex.op == '+' || lex.op == '-') {
+            op = lex.op;
             getToken();
         }
         result = evalExp6();
-        
-        try {
-            double tempResult = Double.parseDouble(result);
 
-            if (op.equals("-"))
-                tempResult = -tempResult;
-        } catch (NumberFormatException e) {
-            if (!op.isEmpty())
-                handleErr(SYNTAX);
-        }
+        if (op != '\0')
+            result = sign(result);
 
         return result;
     }
 
     // 괄호를 처리한다.
-    private String evalExp6() throws ParserException {
-        String result;
+    private Value evalExp6() throws ParserException {
+        Value result;
 
-        if (token.equals("(")) {
+        if (lex.op == '(') {
             getToken();
             result = evalExp2();
-            if (!token.equals(")"))
+            if (lex.op != ')')
                 handleErr(UNBALPARENS);
             getToken();
         } else
@@ -226,24 +607,20 @@ class StringParser {
     }
 
     // 숫자 또는 변수 값 또는 문자열을 가져온다.
-    private String atom() throws ParserException {
-        String result = "";
+    private Value atom() throws ParserException {
+        Value result = null;
 
-        switch (tokType) {
+        switch (lex.type) {
             case NUMBER:
-                try {
-                    result = String.valueOf(Double.parseDouble(token));
-                } catch (NumberFormatException exc) {
-                    handleErr(SYNTAX);
-                }
+                result = number();
                 getToken();
                 break;
             case VARIABLE:
-                result = findVar(token);
+                result = findVar();
                 getToken();
                 break;
             case STRING:
-                result = token;
+                result = Value.of(lex.text());
                 getToken();
                 break;
             default:
@@ -253,107 +630,299 @@ class StringParser {
         return result;
     }
 
-    // 변수의 값을 반환한다.
-    private String findVar(String vname) throws ParserException {
-        if (!Character.isLetter(vname.charAt(0))) {
-            handleErr(SYNTAX);
-            return "";
+    // 할당 노드를 만든다.
+    private StringNode compExp1() throws ParserException {
+        int varStart;
+
+        if (lex.type == VARIABLE) {
+            varStart = lex.tokStart;
+            String name = lex.text();
+
+            getToken();
+            if (lex.op != '=') {
+                putBack(varStart);
+            } else {
+                getToken();
+                return StringNode.assign(slotOf(name), compExp2());
+            }
         }
-        return vars[Character.toUpperCase(vname.charAt(0)) - 'A'];
-    }
 
-    // 입력 스트림의 값만큼 인덱스 값을 되돌린다.
-    private void putBack() {
-        if (token == EOE)
-            return;
-        for (int i = 0; i < token.length(); i++)
-            expIdx--;
+        return compExp2();
     }
 
-    // 오류를 처리한다.
-    private void handleErr(int error) throws ParserException {
-        String[] err = { "Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero" };
+    // 덧셈, 뺄셈 노드를 만든다.
+    private StringNode compExp2() throws ParserException {
+        char op;
+        StringNode result;
 
-        throw new ParserException(err[error]);
+        result = compExp3();
+
+        while ((op = lex.op) == '+' || op == '-') {
+            getToken();
+            result = StringNode.binary(op, result, compExp3());
+        }
+        return result;
     }
 
-    // 토큰값을 가져온다.
-    private void getToken() {
-        tokType = NONE;
-        token = "";
+    // 곱셈, 나눗셈, 나머지 노드를 만든다.
+    private StringNode compExp3() throws ParserException {
+        char op;
+        StringNode result;
 
-        // 표현의 끝인지 여부를 확인한다.
-        if(expIdx == exp.length()) {
-            token = EOE;
-            return;
+        result = compExp4();
+
+        while ((op = lex.op) == '*' || op == '/' || op == '%') {
+            getToken();
+            result = StringNode.binary(op, result, compExp4());
         }
+        return result;
+    }
 
-        // 공백을 넘어간다.
-        while(expIdx < exp.length() && Character.isWhitespace(exp.charAt(expIdx)))
-            ++expIdx;
+    // 지수 노드를 만든다.
+    private StringNode compExp4() throws ParserException {
+        StringNode result;
 
-        // 표현의 마지막인지 확인한다.
-        if(expIdx == exp.length()) {
-            token = EOE;
-            return;
-        }
+        result = compExp5();
 
-        if(isDelim(exp.charAt(expIdx))) { // 연산자형
-            token += exp.charAt(expIdx);
-            expIdx++;
-            tokType = DELIMITER;
+        if (lex.op == '^') {
+            getToken();
+            result = StringNode.binary('^', result, compExp4());
         }
-        else if(Character.isLetter(exp.charAt(expIdx))) { // 변수형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if(expIdx >= exp.length())
-                    break;
-            }
-            tokType = VARIABLE;
+        return result;
+    }
+
+    // 단항 +, - 노드를 만든다.
+    private StringNode compExp5() throws ParserException {
+        StringNode result;
+        char op;
+
+        op = '\0';
+        if (lex.op == '+' || lex.op == '-') {
+            op = lex.op;
+            getToken();
         }
-        else if(Character.isDigit(exp.charAt(expIdx))) { // 숫자형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if (expIdx >= exp.length())
-                    break;
-            }
-            tokType = NUMBER;
+        result = compExp6();
+
+        if (op != '\0')
+            result = StringNode.sign(result);
+
+        return result;
+    }
+
+    // 괄호를 처리한다.
+    private StringNode compExp6() throws ParserException {
+        StringNode result;
+
+        if (lex.op == '(') {
+            getToken();
+            result = compExp2();
+            if (lex.op != ')')
+                handleErr(UNBALPARENS);
+            getToken();
+        } else
+            result = compAtom();
+
+        return result;
+    }
+
+    // 상수 또는 변수 노드를 만든다.
+    private StringNode compAtom() throws ParserException {
+        StringNode result = null;
+
+        switch (lex.type) {
+            case NUMBER:
+                result = StringNode.constant(number());
+                getToken();
+                break;
+            case VARIABLE:
+                result = StringNode.var(slotOf(lex.text())); // 이름은 여기서 한 번만 번호로 바꾼다.
+                getToken();
+                break;
+            case STRING:
+                result = StringNode.constant(Value.of(lex.text()));
+                getToken();
+                break;
+            default:
+                handleErr(SYNTAX);
+                break;
         }
-        else if (exp.charAt(expIdx) == '"') { // 문자열형
-            // 여는 따옴표는 넘어감
-            expIdx++;
-
-            // 문자열 범위 내에 있고, 닫는 따옴표 등장 전까지 반복
-            while (expIdx < exp.length() && exp.charAt(expIdx) != '"') {
-                token += exp.charAt(expIdx);    // 문자 추가
-                expIdx++;                       // 다음 문자로 이동
-            }
-            expIdx++;           // 닫는 따옴표 넘어감
-            tokType = STRING;   // 토큰 타입은 STRING 
+        return result;
+    }
+
+    // 컴파일된 노드의 값을 구한다.
+    Value eval(StringNode n) throws ParserException {
+        Value v;
+
+        switch (n.kind) {
+            case StringNode.CONST:
+                return n.value;
+            case StringNode.VAR:
+                v = values[n.slot];
+                if (v == null)
+                    handleErr(SYNTAX);
+                return v;
+            case StringNode.ASSIGN:
+                v = eval(n.left);
+                values[n.slot] = v;
+                return v;
+            case StringNode.SIGN:
+                return sign(eval(n.left));
+            default:
+                v = eval(n.left);
+                return apply(n.op, v, eval(n.right));
         }
-        else // 기타 정의되지 않은 형이라면 표현식이 종료된 것으로 간주한다.
-        {
-            token = EOE;
-            return;
+    }
+
+    // 이항 연산을 계산한다. evalExp2~4와 컴파일된 표현식이 함께 사용한다.
+    private Value apply(char op, Value result, Value partialResult) throws ParserException {
+        switch (op) {
+            case '+':
+                // 둘 다 숫자이면 더하고, 아니면 문자열로 잇는다.
+                if (result.isNumber() && partialResult.isNumber())
+                    return Value.of(result.number() + partialResult.number());
+                return Value.concat(result, partialResult);
+            case '^':
+                if (result.isNumber() && partialResult.isNumber()) {
+                    // 이전과 같이 지수가 0이면 1.0이 되고, 그 밖에는 밑이 그대로 결과가 된다.
+                    if (partialResult.number() == 0.0)
+                        return Value.of(1.0);
+                    return result;
+                }
+                break;
+            default:
+                if (result.isNumber() && partialResult.isNumber()) {
+                    double a = result.number(), b = partialResult.number();
+                    switch (op) {
+                        case '-':
+                            return Value.of(a - b);
+                        case '*':
+                            return Value.of(a * b);
+                        case '/':
+                            if (b == 0.0)
+                                handleErr(DIVBYZERO);
+                            return Value.of(a / b);
+                        case '%':
+                            if (b == 0.0)
+                                handleErr(DIVBYZERO);
+                            return Value.of(a % b);
+                    }
+                }
+                break;
         }
+        handleErr(SYNTAX);
+        return null;
     }
 
-    // true가 리턴되면 c는 구획 문자이다.
-    private boolean isDelim(char c) {
-        if((" +-/*^=()".indexOf(c) != -1))
-            return true;
-        return false;
+    // 이전과 같이 단항 부호는 숫자의 부호를 바꾸지 않고, 문자열 앞의 부호는 에러로 처리한다.
+    private Value sign(Value v) throws ParserException {
+        if (!v.isNumber())
+            handleErr(SYNTAX);
+        return v;
     }
 
-    // 숫자인지 확인하는 메소드
-    private boolean isNumber(String str) {
+    // 현재 NUMBER 토큰의 값
+    private Value number() throws ParserException {
         try {
-            Double.parseDouble(str);        // 숫자로 변환이 가능하면
-            return true;                    // true
-        } catch (NumberFormatException e) { // 숫자가 아니면
-            return false;                   // false
+            return Value.of(lex.number());
+        } catch (NumberFormatException exc) {
+            handleErr(SYNTAX);
+            return null;
         }
     }
+
+    // 현재 VARIABLE 토큰의 값을 반환한다. 값을 넣지 않은 변수도 에러로 처리한다.
+    private Value findVar() throws ParserException {
+        int slot = lookup(lex.exp, lex.start, lex.end);
+        Value v = slot == -1 ? null : values[slot];
+
+        if (v == null)
+            handleErr(SYNTAX);
+        return v;
+    }
+
+    // idx 위치로 인덱스 값을 되돌려 그 위치의 토큰을 다시 읽는다.
+    private void putBack(int idx) {
+        lex.rewind(idx);
+        getToken();
+    }
+
+    // 오류 메시지 (오류 종류 상수값의 순서)
+    private static final String[] ERRORS = { "Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero" };
+
+    // 오류를 처리한다.
+    private void handleErr(int error) throws ParserException {
+        throw new ParserException(ERRORS[error]);
+    }
+
+    // 토큰값을 가져온다.
+    private void getToken() {
+        lex.next();
+    }
+}
+
+// StringParser.compile()로 만든 표현식 트리의 노드
+final class StringNode {
+    // 노드 종류 상수값
+    static final int CONST = 0;  // 숫자 또는 문자열 상수
+    static final int VAR = 1;    // 변수 (slot)
+    static final int ASSIGN = 2; // 변수 = left
+    static final int SIGN = 3;   // 단항 +, -
+    static final int BINARY = 4; // left op right
+
+    final int kind;
+    final char op;      // BINARY의 연산자 문자
+    final Value value;  // CONST의 값
+    final int slot;     // VAR, ASSIGN의 변수 번호
+    final StringNode left;
+    final StringNode right;
+
+    private StringNode(int kind, char op, Value value, int slot, StringNode left, StringNode right) {
+        this.kind = kind;
+        this.op = op;
+        this.value = value;
+        this.slot = slot;
+        this.left = left;
+        this.right = right;
+    }
+
+    static StringNode constant(Value value) {
+        return new StringNode(CONST, '\0', value, -1, null, null);
+    }
+
+    static StringNode var(int slot) {
+        return new StringNode(VAR, '\0', null, slot, null, null);
+    }
+
+    static StringNode assign(int slot, StringNode expr) {
+        return new StringNode(ASSIGN, '\0', null, slot, expr, null);
+    }
+
+    static StringNode sign(StringNode expr) {
+        return new StringNode(SIGN, '\0', null, -1, expr, null);
+    }
+
+    static StringNode binary(char op, StringNode left, StringNode right) {
+        return new StringNode(BINARY, op, null, -1, left, right);
+    }
+}
+
+// 컴파일된 StringParser 표현식. 변수 값은 만든 StringParser의 기호표에서 읽고 쓴다.
+final class StringExpression {
+    private final StringParser parser;
+    private final StringNode root;
+
+    StringExpression(StringParser parser, StringNode root) {
+        this.parser = parser;
+        this.root = root;
+    }
+
+    StringNode root() {
+        return root;
+    }
+
+    // 현재 변수 값으로 표현식의 값을 구한다.
+    public String evaluate() throws ParserException {
+        Value result = parser.eval(root);
+        return result == null ? null : result.toString();
+    }
 }
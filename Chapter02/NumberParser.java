@@ -0,0 +1,211 @@
+/*
+    이 모듈은 Lexer(Parser, Simple/Parser, StringParser)와 3장의 SBasic이 함께 사용하는 숫자 변환을 포함한다.
+    문자열을 만들지 않고 문자 범위에서 바로 double 값을 구하며, 결과는 Double.parseDouble()과 항상 같다.
+    1. 15자리 이하의 수와 10^22 이하의 지수는 한 번의 곱셈이나 나눗셈으로 정확히 계산한다.
+    2. 19자리 이하의 수는 Eisel-Lemire 알고리즘으로 128비트 곱셈 한 번에 올바르게 반올림된 값을 구한다.
+    3. 그 밖의 경우(자릿수가 많은 수, 비정규 수, 반올림이 애매한 경우, 숫자가 아닌 형식)는 Double.parseDouble()에 맡긴다.
+ */
+import java.math.BigInteger;
+
+class NumberParser
+{
+    // 10의 거듭제곱 중 double로 정확히 표현되는 값들
+    private static final double[] POW10 = new double[23];
+
+    // 10^q (MIN_EXP10 <= q <= MAX_EXP10)의 가수를 최상위 비트가 1이 되도록 정규화한 128비트 값.
+    // 5^q와 가수가 같으므로 5의 거듭제곱으로 계산한다.
+    private static final int MIN_EXP10 = -342;
+    private static final int MAX_EXP10 = 308;
+    private static final long[] POW10_HI = new long[MAX_EXP10 - MIN_EXP10 + 1];
+    private static final long[] POW10_LO = new long[MAX_EXP10 - MIN_EXP10 + 1];
+
+    // 곱셈 한 번으로 정확한 값을 얻을 수 있는 가수의 최댓값 (2^53). 19자리 가수는 부호 없는 값으로 비교한다.
+    private static final long MAX_EXACT = 1L << 53;
+
+    static
+    {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10.0;
+
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int q = MIN_EXP10; q <= MAX_EXP10; q++)
+        {
+            BigInteger m;
+            if (q >= 0)
+            {
+                BigInteger p = BigInteger.valueOf(5).pow(q);
+                int shift = p.bitLength() - 128;
+                m = shift > 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+            }
+            else
+            {
+                // 5^-q가 64비트에 들어가면 정확히 128비트가 되도록 나누고,
+                // 그보다 크면 더 많은 비트로 나눈 뒤 128비트로 잘라낸다.
+                BigInteger p = BigInteger.valueOf(5).pow(-q);
+                int z = p.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                m = BigInteger.ONE.shiftLeft(b).divide(p).add(BigInteger.ONE);
+                if (m.bitLength() > 128)
+                    m = m.shiftRight(m.bitLength() - 128);
+            }
+            POW10_HI[q - MIN_EXP10] = m.shiftRight(64).longValue();
+            POW10_LO[q - MIN_EXP10] = m.and(mask).longValue();
+        }
+    }
+
+    // s의 [start, end) 범위에 있는 부호 없는 10진수를 double로 바꾼다.
+    // 숫자 형식이 아니면 Double.parseDouble()과 같은 NumberFormatException을 발생시킨다.
+    static double parse(CharSequence s, int start, int end)
+    {
+        long mantissa = 0;  // 유효 숫자 (최대 19자리)
+        int digits = 0;     // 유효 숫자의 개수 (앞의 0은 세지 않는다.)
+        int exp10 = 0;      // 10진 지수
+        boolean any = false;
+        int i = start;
+        char c;
+
+        // 정수 부분
+        while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+        {
+            if (mantissa != 0 || c != '0')
+            {
+                if (++digits > 19)
+                    return slow(s, start, end);
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            any = true;
+            i++;
+        }
+
+        // 소수 부분
+        if (i < end && s.charAt(i) == '.')
+        {
+            i++;
+            while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+            {
+                if (mantissa != 0 || c != '0')
+                {
+                    if (++digits > 19)
+                        return slow(s, start, end);
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                exp10--;
+                any = true;
+                i++;
+            }
+        }
+        if (!any)
+            return slow(s, start, end);
+
+        // 지수 부분
+        if (i < end && ((c = s.charAt(i)) == 'e' || c == 'E'))
+        {
+            boolean negative = false;
+            int e = 0;
+
+            if (++i < end && ((c = s.charAt(i)) == '+' || c == '-'))
+            {
+                negative = c == '-';
+                i++;
+            }
+            if (i == end)
+                return slow(s, start, end);
+            while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+            {
+                if (e < 100000) // 이보다 큰 지수는 결과가 같으므로 더 세지 않는다.
+                    e = e * 10 + (c - '0');
+                i++;
+            }
+            exp10 += negative ? -e : e;
+        }
+
+        // 1.5f, 0x10 등 나머지 형식
+        if (i != end)
+            return slow(s, start, end);
+
+        if (mantissa == 0)
+            return 0.0;
+
+        // 가수와 10의 거듭제곱이 모두 정확한 double이면 한 번의 연산으로 올바르게 반올림된다.
+        if (Long.compareUnsigned(mantissa, MAX_EXACT) <= 0 && exp10 >= -22 && exp10 <= 22)
+        {
+            if (exp10 < 0)
+                return mantissa / POW10[-exp10];
+            return mantissa * POW10[exp10];
+        }
+
+        double d = eiselLemire(mantissa, exp10);
+        if (!Double.isNaN(d))
+            return d;
+        return slow(s, start, end);
+    }
+
+    // mantissa * 10^exp10을 올바르게 반올림한 값을 구한다. 결정할 수 없으면 NaN을 반환한다.
+    private static double eiselLemire(long mantissa, int exp10)
+    {
+        if (exp10 < MIN_EXP10 || exp10 > MAX_EXP10)
+            return Double.NaN;
+
+        // 가수의 최상위 비트가 1이 되도록 옮긴다.
+        int clz = Long.numberOfLeadingZeros(mantissa);
+        long man = mantissa << clz;
+        // 217706 / 2^16은 log2(10)의 근삿값이다.
+        long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+        // 128비트 곱셈의 상위 64비트만 먼저 구한다.
+        long hi = POW10_HI[exp10 - MIN_EXP10];
+        long xHi = unsignedMultiplyHigh(man, hi);
+        long xLo = man * hi;
+
+        // 하위 비트가 모두 1이면 잘라낸 아래쪽 64비트까지 곱해서 다시 확인한다.
+        if ((xHi & 0x1FF) == 0x1FF && Long.compareUnsigned(xLo + man, man) < 0)
+        {
+            long lo = POW10_LO[exp10 - MIN_EXP10];
+            long yHi = unsignedMultiplyHigh(man, lo);
+            long yLo = man * lo;
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if (Long.compareUnsigned(mergedLo, xLo) < 0)
+                mergedHi++;
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && Long.compareUnsigned(yLo + man, man) < 0)
+                return Double.NaN;
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        // 54비트로 줄인다.
+        long msb = xHi >>> 63;
+        long retMantissa = xHi >>> (msb + 9);
+        retExp2 -= 1 ^ msb;
+
+        // 정확히 두 double의 중간이면 짝수 쪽으로 반올림해야 하는지 알 수 없다.
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1)
+            return Double.NaN;
+
+        // 53비트로 반올림한다.
+        retMantissa += retMantissa & 1;
+        retMantissa >>>= 1;
+        if ((retMantissa >>> 53) > 0)
+        {
+            retMantissa >>>= 1;
+            retExp2++;
+        }
+
+        // 비정규 수, 0, 무한대는 Double.parseDouble()에 맡긴다.
+        if (retExp2 <= 0 || retExp2 >= 0x7FF)
+            return Double.NaN;
+        return Double.longBitsToDouble(retExp2 << 52 | retMantissa & 0x000FFFFFFFFFFFFFL);
+    }
+
+    // 두 수를 부호 없는 64비트 정수로 보고 곱한 128비트 값의 상위 64비트
+    private static long unsignedMultiplyHigh(long a, long b)
+    {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static double slow(CharSequence s, int start, int end)
+    {
+        return Double.parseDouble(s.subSequence(start, end).toString());
+    }
+}
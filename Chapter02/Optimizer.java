@@ -0,0 +1,233 @@
+/*
+    이 모듈은 파싱과 계산 사이에서 표현식 트리를 정리하는 최적화 단계를 포함한다.
+    결과 값(부호 있는 0, NaN 포함)과 에러가 바뀌지 않는 변환만 적용한다.
+    리듀스 연산의 본문에서 인덱스 변수를 읽지 않는 부분식은 계산할 때 한 번만 구해서 상수로 바꾼다(hoist).
+ */
+
+class Optimizer
+{
+    // 트리를 아래에서부터 정리한 새 트리를 반환한다.
+    static Node optimize(Node n)
+    {
+        Node left, right;
+
+        switch (n.op)
+        {
+            case Node.NUM:
+            case Node.VAR:
+                return n;
+            case Node.NEG:
+                left = optimize(n.left);
+                if (left.op == Node.NUM) // -상수
+                    return Node.num(-left.value);
+                if (left.op == Node.NEG) // -(-x) = x
+                    return left.left;
+                return left == n.left ? n : Node.op(Node.NEG, left, null);
+            case Node.NOT:
+                left = optimize(n.left);
+                if (left.op == Node.NUM) // !상수
+                    return Node.num(Node.truth(left.value) ? 0.0 : 1.0);
+                return left == n.left ? n : Node.op(Node.NOT, left, null);
+            case Node.COND:
+                left = optimize(n.left);
+                // 조건이 상수이면 고른 쪽만 남긴다. 다른 쪽은 어차피 계산되지 않는다.
+                if (left.op == Node.NUM)
+                    return optimize(Node.truth(left.value) ? n.right : n.body);
+                right = optimize(n.right);
+                Node otherwise = optimize(n.body);
+                if (left == n.left && right == n.right && otherwise == n.body)
+                    return n;
+                return Node.cond(left, right, otherwise);
+            case Node.SUM:
+            case Node.PRODUCT:
+            case Node.MIN:
+            case Node.MAX:
+                left = optimize(n.left);
+                right = optimize(n.right);
+                Node body = optimize(n.body);
+                if (left == n.left && right == n.right && body == n.body)
+                    return n;
+                return Node.reduce(n.op, n.slot, left, right, body, n.column);
+        }
+
+        left = optimize(n.left);
+        right = optimize(n.right);
+
+        // 양쪽이 모두 상수이면 미리 계산한다.
+        if (left.op == Node.NUM && right.op == Node.NUM)
+        {
+            Node folded = fold(n.op, left.value, right.value);
+            if (folded != null)
+                return folded;
+        }
+
+        switch (n.op)
+        {
+            case Node.ADD:
+                // x + (-0) = x. x + 0은 x가 -0일 때 결과가 +0이 되므로 바꾸지 않는다.
+                if (isNegativeZero(right))
+                    return left;
+                if (isNegativeZero(left))
+                    return right;
+                break;
+            case Node.SUB:
+                if (isPositiveZero(right)) // x - 0 = x
+                    return left;
+                break;
+            case Node.MUL:
+                if (isOne(right)) // x * 1 = x
+                    return left;
+                if (isOne(left))  // 1 * x = x
+                    return right;
+                break;
+            case Node.DIV:
+                if (isOne(right)) // x / 1 = x
+                    return left;
+                // 2의 거듭제곱으로 나누는 것은 그 역수를 곱하는 것과 결과가 같다.
+                // 곱셈으로 바꾸면 0으로 나누기 검사도 필요 없다.
+                if (right.op == Node.NUM && isPowerOfTwo(right.value))
+                    return Node.op(Node.MUL, left, Node.num(1.0 / right.value));
+                break;
+            case Node.AND:
+                // 0 && x = 0. x는 계산되지 않으므로 에러가 날 수 있어도 된다.
+                if (left.op == Node.NUM && !Node.truth(left.value))
+                    return Node.num(0.0);
+                break;
+            case Node.OR:
+                // 참 || x = 1
+                if (left.op == Node.NUM && Node.truth(left.value))
+                    return Node.num(1.0);
+                break;
+            case Node.POW:
+                if (isOne(right))          // x ^ 1 = x
+                    return left;
+                // x ^ 0 = 1. x를 계산하다 에러가 날 수 있으면 그대로 둔다.
+                if ((isPositiveZero(right) || isNegativeZero(right)) && !canFail(left))
+                    return Node.num(1.0);
+                break;
+        }
+
+        if (left == n.left && right == n.right)
+            return n;
+        return Node.op(n.op, left, right, n.column);
+    }
+
+    // 리듀스 연산의 본문 body에서 인덱스 변수(slot)를 읽지 않는 부분식을 vars로 한 번 계산해서 상수로 바꾼 트리를 반환한다.
+    // 인덱스마다 반드시 계산되는 부분식(&&, ||, ?:는 첫 피연산자만)만 바꾸므로 계산이 늘어나지 않는다.
+    // 계산하다 에러가 나는 부분식은 그대로 두어 원래의 인덱스와 순서에서 에러가 나게 한다.
+    static Node hoist(Node body, int slot, double[] vars)
+    {
+        if (body.op == Node.NUM || body.op == Node.VAR)
+            return body;
+        if (!reads(body, slot))
+        {
+            try
+            {
+                return Node.num(Expression.eval(body, vars));
+            }
+            catch (ParserException e)
+            {
+                return body;
+            }
+        }
+
+        Node left = hoist(body.left, slot, vars);
+        // 안쪽 리듀스 연산의 본문은 범위가 비어 있으면 계산되지 않는다. 그 본문은 안쪽 연산이 따로 정리한다.
+        if (Node.isReduction(body.op))
+        {
+            Node right = hoist(body.right, slot, vars);
+            if (left == body.left && right == body.right)
+                return body;
+            return Node.reduce(body.op, body.slot, left, right, body.body, body.column);
+        }
+        if (Node.isLazy(body.op))
+        {
+            if (left == body.left)
+                return body;
+            if (body.op == Node.COND)
+                return Node.cond(left, body.right, body.body);
+            return Node.op(body.op, left, body.right, body.column);
+        }
+        Node right = body.right == null ? null : hoist(body.right, slot, vars);
+        if (left == body.left && right == body.right)
+            return body;
+        return Node.op(body.op, left, right, body.column);
+    }
+
+    // 부분식이 slot 변수를 읽는지 확인한다.
+    private static boolean reads(Node n, int slot)
+    {
+        if (n == null)
+            return false;
+        if (n.op == Node.VAR)
+            return n.slot == slot;
+        return reads(n.left, slot) || reads(n.right, slot) || reads(n.body, slot);
+    }
+
+    // 상수끼리의 연산을 계산한다. 0으로 나누는 경우는 계산할 때 에러가 나도록 남겨 둔다.
+    private static Node fold(int op, double a, double b)
+    {
+        switch (op)
+        {
+            case Node.ADD:
+                return Node.num(a + b);
+            case Node.SUB:
+                return Node.num(a - b);
+            case Node.MUL:
+                return Node.num(a * b);
+            case Node.DIV:
+                return b == 0.0 ? null : Node.num(a / b);
+            case Node.MOD:
+                return b == 0.0 ? null : Node.num(a % b);
+            case Node.POW:
+                return Node.num(Power.pow(a, b));
+            case Node.LT:
+            case Node.LE:
+            case Node.GT:
+            case Node.GE:
+            case Node.EQ:
+            case Node.NE:
+                return Node.num(Node.compare(op, a, b));
+            case Node.AND:
+                return Node.num(Node.truth(a) && Node.truth(b) ? 1.0 : 0.0);
+            case Node.OR:
+                return Node.num(Node.truth(a) || Node.truth(b) ? 1.0 : 0.0);
+            default:
+                return null;
+        }
+    }
+
+    // 계산 중에 에러(0으로 나누기, 리듀스 범위가 잘못됨)가 날 수 있는 노드가 있는지 확인한다.
+    static boolean canFail(Node n)
+    {
+        if (n == null)
+            return false;
+        if (n.op == Node.DIV || n.op == Node.MOD || Node.isReduction(n.op))
+            return true;
+        return canFail(n.left) || canFail(n.right) || canFail(n.body);
+    }
+
+    private static boolean isOne(Node n)
+    {
+        return n.op == Node.NUM && n.value == 1.0;
+    }
+
+    private static boolean isPositiveZero(Node n)
+    {
+        return n.op == Node.NUM && Double.doubleToRawLongBits(n.value) == 0L;
+    }
+
+    private static boolean isNegativeZero(Node n)
+    {
+        return n.op == Node.NUM && Double.doubleToRawLongBits(n.value) == Long.MIN_VALUE;
+    }
+
+    // 절댓값이 2의 거듭제곱이고 역수도 정규화된 double인지 확인한다.
+    private static boolean isPowerOfTwo(double v)
+    {
+        if (v == 0.0 || Double.isNaN(v) || Double.isInfinite(v))
+            return false;
+        int e = Math.getExponent(v);
+        return Math.abs(v) == Math.scalb(1.0, e) && e > Double.MIN_EXPONENT && e < Double.MAX_EXPONENT;
+    }
+}
@@ -1,12 +1,35 @@
 // 파서 보여주기
 import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 class PDemo
 {
+    // 배치 모드에서 한 번에 읽어서 작업자에게 넘기는 줄 수
+    static final int CHUNK_LINES = 4096;
+
     public static void main(String[] args) throws IOException
     {
         String expr;
 
+        // java PDemo -batch [스레드 수] < 입력 파일 > 결과 파일
+        if (args.length > 0 && args[0].equals("-batch"))
+        {
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            batch(threads);
+            return;
+        }
+
+        // java PDemo -map 입력 파일 [스레드 수] > 결과 파일
+        if (args.length > 1 && args[0].equals("-map"))
+        {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            mapped(Paths.get(args[1]), threads);
+            return;
+        }
+
         BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
         Parser p = new Parser();
 
@@ -29,4 +52,192 @@ class PDemo
             }
         }
     }
+
+    // 표준 입력의 한 줄을 하나의 표현식으로 보고 여러 스레드에서 계산한다.
+    // 결과는 입력 순서대로 한 줄에 하나씩 출력하고, 에러가 난 줄에는 에러 메시지를 출력한다.
+    static void batch(int threads) throws IOException
+    {
+        BufferedReader br = new BufferedReader(new InputStreamReader(System.in), 1 << 20);
+        Parser p = new Parser(); // Parser는 상태가 없으므로 모든 스레드가 함께 사용한다.
+        long t0 = System.nanoTime();
+
+        long[] counts = run(() -> {
+            String[] exprs = readChunk(br);
+            return exprs == null ? null : () -> evaluateChunk(p, exprs);
+        }, threads);
+
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.err.printf("%d lines, %d errors, %.3f s, %.0f lines/s (%d threads)%n",
+                counts[0], counts[1], secs, counts[0] / secs, threads);
+    }
+
+    // batch()와 같지만 입력 파일을 매핑해서 읽는다. 줄마다 String을 만들지 않고 매핑된 바이트를 바로 계산한다.
+    static void mapped(Path file, int threads) throws IOException
+    {
+        Parser p = new Parser();
+        long t0 = System.nanoTime();
+        long[] counts;
+
+        try (MappedLines in = new MappedLines(file))
+        {
+            counts = run(() -> {
+                ByteBuffer region = in.next();
+                return region == null ? null : () -> evaluateRegion(p, region);
+            }, threads);
+        }
+
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.err.printf("%d lines, %d errors, %.3f s, %.0f lines/s, %.1f MB/s (%d threads)%n",
+                counts[0], counts[1], secs, counts[0] / secs, Files.size(file) / secs / 1e6, threads);
+    }
+
+    // 다음 조각을 계산할 작업을 만든다. 더 읽을 것이 없으면 null을 반환한다.
+    private interface ChunkReader
+    {
+        Callable<Chunk> next() throws IOException;
+    }
+
+    // 조각들을 스레드 풀에서 계산하고 입력 순서대로 표준 출력에 쓴다. {줄 수, 에러 수}를 반환한다.
+    private static long[] run(ChunkReader reader, int threads) throws IOException
+    {
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        // 아직 출력하지 않은 조각들. 읽기가 계산보다 너무 앞서가지 않도록 개수를 제한한다.
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        int maxPending = threads * 2;
+        long lines = 0, errors = 0;
+
+        try
+        {
+            for (;;)
+            {
+                Callable<Chunk> task = reader.next();
+                if (task == null)
+                    break;
+                pending.add(pool.submit(task));
+
+                if (pending.size() >= maxPending)
+                {
+                    Chunk c = write(pending.remove(), bw);
+                    lines += c.lines;
+                    errors += c.errors;
+                }
+            }
+            while (!pending.isEmpty())
+            {
+                Chunk c = write(pending.remove(), bw);
+                lines += c.lines;
+                errors += c.errors;
+            }
+            bw.flush();
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+        return new long[] { lines, errors };
+    }
+
+    // 최대 CHUNK_LINES 줄을 읽는다. 더 읽을 것이 없으면 null을 반환한다.
+    private static String[] readChunk(BufferedReader br) throws IOException
+    {
+        String[] exprs = new String[CHUNK_LINES];
+        int n = 0;
+        String line;
+
+        while (n < CHUNK_LINES && (line = br.readLine()) != null)
+            exprs[n++] = line;
+        if (n == 0)
+            return null;
+        return n == CHUNK_LINES ? exprs : Arrays.copyOf(exprs, n);
+    }
+
+    // 작업자 스레드에서 한 조각을 계산해서 출력할 문자열로 만든다.
+    private static Chunk evaluateChunk(Parser p, String[] exprs)
+    {
+        StringBuilder out = new StringBuilder(exprs.length * 16);
+        int errors = 0;
+
+        for (String expr : exprs)
+        {
+            try
+            {
+                out.append(p.evaluate(expr));
+            }
+            catch (ParserException exc)
+            {
+                out.append(exc);
+                errors++;
+            }
+            out.append(System.lineSeparator());
+        }
+        return new Chunk(out, exprs.length, errors);
+    }
+
+    // 작업자 스레드에서 매핑된 영역의 줄들을 계산한다. 줄 바꿈은 \n 또는 \r\n이다.
+    private static Chunk evaluateRegion(Parser p, ByteBuffer region)
+    {
+        StringBuilder out = new StringBuilder(region.limit());
+        ByteChars line = new ByteChars();
+        int limit = region.limit();
+        int lines = 0, errors = 0;
+
+        for (int start = 0; start < limit; )
+        {
+            int end = start;
+            while (end < limit && region.get(end) != '\n')
+                end++;
+            int stop = end > start && region.get(end - 1) == '\r' ? end - 1 : end;
+            try
+            {
+                out.append(p.evaluate(line.set(region, start, stop - start)));
+            }
+            catch (ParserException exc)
+            {
+                out.append(exc);
+                errors++;
+            }
+            out.append(System.lineSeparator());
+            lines++;
+            start = end + 1;
+        }
+        return new Chunk(out, lines, errors);
+    }
+
+    // 조각의 계산이 끝나기를 기다렸다가 출력한다.
+    private static Chunk write(Future<Chunk> f, Writer w) throws IOException
+    {
+        Chunk c;
+        try
+        {
+            c = f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+        w.append(c.out);
+        return c;
+    }
+
+    // 계산이 끝난 조각
+    private static final class Chunk
+    {
+        final StringBuilder out;
+        final int lines;
+        final int errors;
+
+        Chunk(StringBuilder out, int lines, int errors)
+        {
+            this.out = out;
+            this.lines = lines;
+            this.errors = errors;
+        }
+    }
 }
@@ -1,20 +1,42 @@
 /*
     이 모듈은 변수형을 사용하지 않는 재귀적 용법의 파서를 포함한다.
+    compile()로 만든 표현식에서는 변수를 사용할 수 있다.
+    sum, product, min, max(i, lo, hi, 식)는 i가 lo부터 hi까지 1씩 증가할 때의 식의 값을 모으는 리듀스 연산이다.
+    비교 연산(<, <=, >, >=, ==, !=)과 !의 결과는 참이면 1, 거짓이면 0이고, 0이 아닌 값은 모두 참이다.
+    &&(and), ||(or), 조건 ? 식 : 식은 필요한 쪽만 계산한다. 계산하지 않는 쪽도 문법은 검사한다.
+    우선순위는 낮은 것부터 ?:, ||, &&, 비교, + -, * / %, ^, 단항(+, -, !)이다.
  */
+import java.util.*;
 
 // 파서 에러 처리를 위한 Exception 클래스
+// 잘못된 표현식은 흔한 입력이므로 스택 추적을 기록하지 않아서 정상적인 계산과 비슷한 비용으로 처리한다.
 class ParserException extends Exception
 {
     String errStr; // 에러 정의 문자열
+    int column;    // 에러가 난 열 번호 (1부터 시작, 알 수 없으면 0)
 
     public ParserException(String str)
     {
+        this(str, 0);
+    }
+
+    public ParserException(String str, int column)
+    {
+        super(str, null, false, false); // 스택 추적을 만들지 않는다.
         errStr = str;
+        this.column = column;
+    }
+
+    public int getColumn()
+    {
+        return column;
     }
 
     public String toString()
     {
-        return errStr;
+        if (column == 0)
+            return errStr;
+        return errStr + " at column " + column;
     }
 }
 
@@ -32,47 +54,149 @@ class Parser
     final int NOEXP = 2;
     final int DIVBYZERO = 3;
 
-    // 표현식의 끝을 나타내는 상수
-    final String EOE = "\0";
+    // 리듀스 연산 이름 (Node.SUM부터 차례로)
+    private static final String[] REDUCTIONS = {"sum", "product", "min", "max"};
 
-    private String exp;   // 표현(expression)을 담고 있는 문자열
-    private int expIdx;   // 표현(expression)의 현재 인덱스
-    private String token; // 현재 인덱싱 된 토큰
-    private int tokType;  // 현재 인덱싱 된 토큰의 타입
+    /* Parser는 상태를 필드에 두지 않으므로 여러 스레드가 하나의 객체를 함께 사용할 수 있다.
+       호출마다 필요한 상태(현재 토큰과 위치)는 Lexer 객체에 담아 인수로 넘긴다. */
 
     // 파서의 시작점
     public double evaluate(String expstr) throws ParserException
+    {
+        return evaluate((CharSequence) expstr);
+    }
+
+    // 문자열이 아닌 문자 시퀀스(매핑한 파일의 한 줄 등)를 복사하지 않고 바로 계산한다.
+    public double evaluate(CharSequence expstr) throws ParserException
     {
         double result;
-        exp = expstr;
-        expIdx = 0;
+        Lexer lex = new Lexer(false, true);
+        lex.reset(expstr);
 
-        getToken();
-        if (token.equals(EOE))
-            handleErr(NOEXP); // 표현이 존재하지 않음
+        lex.next();
+        if (lex.atEnd())
+            handleErr(NOEXP, lex.tokStart); // 표현이 존재하지 않음
 
         // 표현을 파싱하고 값을 구한다.
-        result = evalExp2();
+        result = evalCond(lex, true);
+
+        if (!lex.atEnd()) // 문자열의 마지막은 EOE이어야 한다. 정의되지 않은 문자에서 멈춰도 에러이다.
+            handleErr(SYNTAX, lex.tokStart);
+
+        return result;
+    }
+
+    // 표현을 한 번만 파싱해서 반복해서 계산할 수 있는 표현식으로 컴파일한다.
+    public Expression compile(String expstr) throws ParserException
+    {
+        Node root;
+        Scope scope = new Scope();
+        Lexer lex = new Lexer(false, true);
+        lex.reset(expstr);
+
+        lex.next();
+        if (lex.atEnd())
+            handleErr(NOEXP, lex.tokStart); // 표현이 존재하지 않음
+
+        // 표현을 파싱하고 트리를 만든다.
+        root = compCond(lex, scope);
+
+        if (!lex.atEnd()) // 문자열의 마지막은 EOE이어야 한다. 정의되지 않은 문자에서 멈춰도 에러이다.
+            handleErr(SYNTAX, lex.tokStart);
+
+        // 상수 부분을 미리 계산하고 항등식을 정리한다.
+        root = Optimizer.optimize(scope.bind(root));
+
+        return new Expression(root, scope.free.toArray(new String[0]), scope.maxLocals);
+    }
+
+    /* 아래의 계산 메소드들은 live가 false이면 고르지 않은 쪽의 식 안이므로 문법만 검사한다.
+       이때는 0으로 나누기 에러를 내지 않고 리듀스 연산도 계산하지 않으며, 반환 값은 의미가 없다. */
+
+    // 조건 연산자 ?:를 처리한다. 오른쪽으로 결합한다.
+    private double evalCond(Lexer lex, boolean live) throws ParserException
+    {
+        double result;
+
+        result = evalOr(lex, live);
+
+        if (lex.op == '?')
+        {
+            boolean test = Node.truth(result);
+            lex.next();
+            double then = evalCond(lex, live && test);
+            if (lex.op != ':')
+                handleErr(SYNTAX, lex.tokStart);
+            lex.next();
+            double otherwise = evalCond(lex, live && !test);
+            result = test ? then : otherwise;
+        }
+        return result;
+    }
+
+    // ||를 처리한다. 왼쪽이 참이면 오른쪽은 계산하지 않는다.
+    private double evalOr(Lexer lex, boolean live) throws ParserException
+    {
+        double result;
+
+        result = evalAnd(lex, live);
+
+        while (logical(lex) == Lexer.OR)
+        {
+            boolean left = Node.truth(result);
+            lex.next();
+            double partialResult = evalAnd(lex, live && !left);
+            result = left || Node.truth(partialResult) ? 1.0 : 0.0;
+        }
+        return result;
+    }
+
+    // &&를 처리한다. 왼쪽이 거짓이면 오른쪽은 계산하지 않는다.
+    private double evalAnd(Lexer lex, boolean live) throws ParserException
+    {
+        double result;
 
-        if (!token.equals(EOE)) // 문자열의 마지막은 EOE이어야 한다.
-            handleErr(SYNTAX);
+        result = evalRel(lex, live);
 
+        while (logical(lex) == Lexer.AND)
+        {
+            boolean left = Node.truth(result);
+            lex.next();
+            double partialResult = evalRel(lex, live && left);
+            result = left && Node.truth(partialResult) ? 1.0 : 0.0;
+        }
+        return result;
+    }
+
+    // 비교 연산을 처리한다.
+    private double evalRel(Lexer lex, boolean live) throws ParserException
+    {
+        int op;
+        double result;
+
+        result = evalExp2(lex, live);
+
+        while ((op = comparison(lex.op)) != -1)
+        {
+            lex.next();
+            result = Node.compare(op, result, evalExp2(lex, live));
+        }
         return result;
     }
 
     // 더하거나 뺀다.
-    private double evalExp2() throws ParserException
+    private double evalExp2(Lexer lex, boolean live) throws ParserException
     {
         char op;
         double result;
         double partialResult;
 
-        result = evalExp3();
+        result = evalExp3(lex, live);
 
-        while ((op = token.charAt(0)) == '+' || op == '-')
+        while ((op = lex.op) == '+' || op == '-')
         {
-            getToken();
-            partialResult = evalExp3();
+            lex.next();
+            partialResult = evalExp3(lex, live);
             switch (op)
             {
                 case '-':
@@ -87,31 +211,32 @@ class Parser
     }
 
     // 곱하거나 나눈다.
-    private double evalExp3() throws ParserException
+    private double evalExp3(Lexer lex, boolean live) throws ParserException
     {
         char op;
         double result;
         double partialResult;
 
-        result = evalExp4();
+        result = evalExp4(lex, live);
 
-        while ((op = token.charAt(0)) == '*' || op == '/' || op == '%')
+        while ((op = lex.op) == '*' || op == '/' || op == '%')
         {
-            getToken();
-            partialResult = evalExp4();
+            int opPos = lex.tokStart; // 0으로 나누면 연산자 위치를 알린다.
+            lex.next();
+            partialResult = evalExp4(lex, live);
             switch (op)
             {
                 case '*':
                     result = result * partialResult;
                     break;
                 case '/':
-                    if (partialResult == 0.0)
-                        handleErr(DIVBYZERO);
+                    if (partialResult == 0.0 && live)
+                        handleErr(DIVBYZERO, opPos);
                     result = result / partialResult;
                     break;
                 case '%':
-                    if (partialResult == 0.0)
-                        handleErr(DIVBYZERO);
+                    if (partialResult == 0.0 && live)
+                        handleErr(DIVBYZERO, opPos);
                     result = result % partialResult;
                     break;
             }
@@ -120,164 +245,437 @@ class Parser
     }
 
     // 지수를 처리한다.
-    private double evalExp4() throws ParserException
+    private double evalExp4(Lexer lex, boolean live) throws ParserException
     {
         double result;
         double partialResult;
-        double ex;
-        int t;
 
-        result = evalExp5();
+        result = evalExp5(lex, live);
 
-        if (token.equals("^"))
+        if (lex.op == '^')
         {
-            getToken();
-            partialResult = evalExp4();
-            ex = result;
-            if (partialResult == 0.0)
-                result = 1.0;
-            else
-                for (t = (int) partialResult - 1; t > 0; t--)
-                    result = result * ex;
+            lex.next();
+            partialResult = evalExp4(lex, live);
+            result = Power.pow(result, partialResult);
         }
         return result;
     }
 
-    // 단항의 +, -를 처리한다.
-    private double evalExp5() throws ParserException
+    // 단항의 +, -, !를 처리한다.
+    private double evalExp5(Lexer lex, boolean live) throws ParserException
     {
         double result;
-        String op;
+        char op;
 
-        op = "";
-        if ((tokType == DELIMITER) && token.equals("+") || token.equals("-"))
+        op = '\0';
+        if (lex.op == '+' || lex.op == '-' || lex.op == '!')
         {
-            op = token;
-            getToken();
+            op = lex.op;
+            lex.next();
         }
-        result = evalExp6();
+        result = evalExp6(lex, live);
 
-        if (op.equals("-"))
+        if (op == '-')
             result = -result;
+        else if (op == '!')
+            result = Node.truth(result) ? 0.0 : 1.0;
 
         return result;
     }
 
     // 괄호를 처리한다.
-    private double evalExp6() throws ParserException
+    private double evalExp6(Lexer lex, boolean live) throws ParserException
     {
         double result;
 
-        if (token.equals("("))
+        if (lex.op == '(')
         {
-            getToken();
-            result = evalExp2();
-            if (!token.equals(")"))
-                handleErr(UNBALPARENS);
-            getToken();
+            lex.next();
+            result = evalCond(lex, live);
+            if (lex.op != ')')
+                handleErr(UNBALPARENS, lex.tokStart);
+            lex.next();
         } else
-            result = atom();
+            result = atom(lex, live);
 
         return result;
     }
 
-    // 숫자값을 구한다.
-    private double atom() throws ParserException
+    // 숫자값을 구한다. StackParser도 같은 방법으로 피연산자를 읽는다.
+    double atom(Lexer lex, boolean live) throws ParserException
     {
         double result = 0.0;
 
-        switch (tokType)
+        switch (lex.type)
         {
             case NUMBER:
                 try
                 {
-                    result = Double.parseDouble(token);
+                    result = lex.number();
                 }
                 catch (NumberFormatException exc)
                 {
-                    handleErr(SYNTAX);
+                    handleErr(SYNTAX, lex.tokStart);
+                }
+                lex.next();
+                break;
+            case VARIABLE:
+                // 리듀스 연산은 컴파일해서 계산한다. 변수는 사용할 수 없다.
+                if (reduction(lex) != -1)
+                {
+                    int start = lex.tokStart;
+                    Scope scope = new Scope();
+                    Node n = compReduction(lex, scope);
+                    if (!scope.free.isEmpty())
+                        handleErr(SYNTAX, start);
+                    if (live)
+                        result = Expression.eval(Optimizer.optimize(scope.bind(n)), new double[scope.maxLocals]);
+                    break;
                 }
-                getToken();
+                handleErr(SYNTAX, lex.tokStart);
                 break;
             default:
-                handleErr(SYNTAX);
+                handleErr(SYNTAX, lex.tokStart);
                 break;
         }
         return result;
     }
 
-    // 에러를 처리한다.
-    private void handleErr(int error) throws ParserException
+    // 조건 노드를 만든다.
+    private Node compCond(Lexer lex, Scope scope) throws ParserException
     {
-        String[] err = {"Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero"};
+        Node result;
+
+        result = compOr(lex, scope);
 
-        throw new ParserException(err[error]);
+        if (lex.op == '?')
+        {
+            lex.next();
+            Node then = compCond(lex, scope);
+            if (lex.op != ':')
+                handleErr(SYNTAX, lex.tokStart);
+            lex.next();
+            result = Node.cond(result, then, compCond(lex, scope));
+        }
+        return result;
     }
 
-    // 토큰값을 가져온다.
-    private void getToken()
+    // || 노드를 만든다.
+    private Node compOr(Lexer lex, Scope scope) throws ParserException
     {
-        tokType = NONE;
-        token = "";
+        Node result;
 
-        // 표현의 끝인지 여부를 확인한다.
-        if (expIdx == exp.length())
+        result = compAnd(lex, scope);
+
+        while (logical(lex) == Lexer.OR)
         {
-            token = EOE;
-            return;
+            lex.next();
+            result = Node.op(Node.OR, result, compAnd(lex, scope));
         }
+        return result;
+    }
 
-        // 공백을 넘어간다.
-        while (expIdx < exp.length() && Character.isWhitespace(exp.charAt(expIdx)))
-            ++expIdx;
+    // && 노드를 만든다.
+    private Node compAnd(Lexer lex, Scope scope) throws ParserException
+    {
+        Node result;
+
+        result = compRel(lex, scope);
 
-        // 표현의 마지막인지 확인한다.
-        if (expIdx == exp.length())
+        while (logical(lex) == Lexer.AND)
         {
-            token = EOE;
-            return;
+            lex.next();
+            result = Node.op(Node.AND, result, compRel(lex, scope));
         }
+        return result;
+    }
+
+    // 비교 노드를 만든다.
+    private Node compRel(Lexer lex, Scope scope) throws ParserException
+    {
+        int op;
+        Node result;
 
-        if (isDelim(exp.charAt(expIdx))) // 연산자
+        result = compExp2(lex, scope);
+
+        while ((op = comparison(lex.op)) != -1)
         {
-            token += exp.charAt(expIdx);
-            expIdx++;
-            tokType = DELIMITER;
+            lex.next();
+            result = Node.op(op, result, compExp2(lex, scope));
         }
-        else if (Character.isLetter(exp.charAt(expIdx))) // 변수형
+        return result;
+    }
+
+    // 덧셈, 뺄셈 노드를 만든다.
+    private Node compExp2(Lexer lex, Scope scope) throws ParserException
+    {
+        char op;
+        Node result;
+
+        result = compExp3(lex, scope);
+
+        while ((op = lex.op) == '+' || op == '-')
         {
-            while (!isDelim(exp.charAt(expIdx)))
+            lex.next();
+            result = Node.op(op == '+' ? Node.ADD : Node.SUB, result, compExp3(lex, scope));
+        }
+        return result;
+    }
+
+    // 곱셈, 나눗셈, 나머지 노드를 만든다.
+    private Node compExp3(Lexer lex, Scope scope) throws ParserException
+    {
+        char op;
+        Node result;
+
+        result = compExp4(lex, scope);
+
+        while ((op = lex.op) == '*' || op == '/' || op == '%')
+        {
+            int column = lex.tokStart + 1; // 0으로 나누면 계산할 때 연산자 위치를 알린다.
+            lex.next();
+            switch (op)
             {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if (expIdx >= exp.length())
+                case '*':
+                    result = Node.op(Node.MUL, result, compExp4(lex, scope));
+                    break;
+                case '/':
+                    result = Node.op(Node.DIV, result, compExp4(lex, scope), column);
+                    break;
+                case '%':
+                    result = Node.op(Node.MOD, result, compExp4(lex, scope), column);
                     break;
             }
-            tokType = VARIABLE;
         }
-        else if (Character.isDigit(exp.charAt(expIdx))) // 숫자형
+        return result;
+    }
+
+    // 지수 노드를 만든다.
+    private Node compExp4(Lexer lex, Scope scope) throws ParserException
+    {
+        Node result;
+
+        result = compExp5(lex, scope);
+
+        if (lex.op == '^')
+        {
+            lex.next();
+            result = Node.op(Node.POW, result, compExp4(lex, scope));
+        }
+        return result;
+    }
+
+    // 단항 -, ! 노드를 만든다.
+    private Node compExp5(Lexer lex, Scope scope) throws ParserException
+    {
+        Node result;
+        char op;
+
+        op = '\0';
+        if (lex.op == '+' || lex.op == '-' || lex.op == '!')
+        {
+            op = lex.op;
+            lex.next();
+        }
+        result = compExp6(lex, scope);
+
+        if (op == '-')
+            result = Node.op(Node.NEG, result, null);
+        else if (op == '!')
+            result = Node.op(Node.NOT, result, null);
+
+        return result;
+    }
+
+    // 괄호를 처리한다.
+    private Node compExp6(Lexer lex, Scope scope) throws ParserException
+    {
+        Node result;
+
+        if (lex.op == '(')
+        {
+            lex.next();
+            result = compCond(lex, scope);
+            if (lex.op != ')')
+                handleErr(UNBALPARENS, lex.tokStart);
+            lex.next();
+        } else
+            result = compAtom(lex, scope);
+
+        return result;
+    }
+
+    // 숫자 상수, 변수 또는 리듀스 연산 노드를 만든다.
+    private Node compAtom(Lexer lex, Scope scope) throws ParserException
+    {
+        if (lex.type == VARIABLE)
         {
-            while (!isDelim(exp.charAt(expIdx)))
+            if (reduction(lex) != -1)
+                return compReduction(lex, scope);
+
+            // 변수 이름은 컴파일할 때 한 번만 인덱스로 바꾼다.
+            int slot = scope.slotOf(lex.text());
+            lex.next();
+            return Node.var(slot);
+        }
+        return Node.num(atom(lex, true));
+    }
+
+    // 현재 토큰이 리듀스 연산 이름이고 바로 뒤에 (가 오면 노드 종류를, 아니면 -1을 반환한다.
+    private static int reduction(Lexer lex)
+    {
+        if (lex.peek() != '(')
+            return -1;
+        for (int i = 0; i < REDUCTIONS.length; i++)
+            if (lex.is(REDUCTIONS[i]))
+                return Node.SUM + i;
+        return -1;
+    }
+
+    // 리듀스 연산 sum(i, lo, hi, 식) 노드를 만든다. i는 식 안에서만 사용하는 인덱스 변수이다.
+    private Node compReduction(Lexer lex, Scope scope) throws ParserException
+    {
+        int op = reduction(lex);
+        int column = lex.tokStart + 1;
+        Node lo, hi, body;
+
+        lex.next();
+        lex.next(); // (
+        if (lex.type != VARIABLE)
+            handleErr(SYNTAX, lex.tokStart);
+        String index = lex.text();
+        lex.next();
+
+        comma(lex);
+        lo = compCond(lex, scope);
+        comma(lex);
+        hi = compCond(lex, scope);
+        comma(lex);
+        int slot = scope.push(index);
+        body = compCond(lex, scope);
+        scope.pop();
+
+        if (lex.op != ')')
+            handleErr(UNBALPARENS, lex.tokStart);
+        lex.next();
+        return Node.reduce(op, slot, lo, hi, body, column);
+    }
+
+    // 현재 토큰이 &&나 and이면 Lexer.AND, ||나 or이면 Lexer.OR, 아니면 '\0'을 반환한다.
+    // and, or는 피연산자 뒤에서만 연산자로 보므로 같은 이름의 변수도 쓸 수 있다.
+    static char logical(Lexer lex)
+    {
+        if (lex.op == Lexer.AND || lex.op == Lexer.OR)
+            return lex.op;
+        if (lex.type == Lexer.VARIABLE)
+        {
+            if (lex.is("and"))
+                return Lexer.AND;
+            if (lex.is("or"))
+                return Lexer.OR;
+        }
+        return '\0';
+    }
+
+    // 비교 연산자의 노드 종류. 비교 연산자가 아니면 -1
+    static int comparison(char op)
+    {
+        switch (op)
+        {
+            case '<':
+                return Node.LT;
+            case Lexer.LE:
+                return Node.LE;
+            case '>':
+                return Node.GT;
+            case Lexer.GE:
+                return Node.GE;
+            case Lexer.EQ:
+                return Node.EQ;
+            case Lexer.NE:
+                return Node.NE;
+            default:
+                return -1;
+        }
+    }
+
+    // 인수 사이의 쉼표를 읽는다.
+    private void comma(Lexer lex) throws ParserException
+    {
+        if (lex.op != ',')
+            handleErr(SYNTAX, lex.tokStart);
+        lex.next();
+    }
+
+    // 컴파일 중의 변수 이름표
+    private static final class Scope
+    {
+        final List<String> free = new ArrayList<>();   // 변수 이름 (처음 나온 순서)
+        final List<String> locals = new ArrayList<>(); // 감싸고 있는 리듀스 연산의 인덱스 변수 (바깥쪽부터)
+        int maxLocals; // 동시에 사용되는 인덱스 변수의 최대 개수
+
+        // 변수의 번호를 반환한다. 인덱스 변수는 아직 변수 개수를 모르므로 음수(-1 - 깊이)로 둔다.
+        int slotOf(String name)
+        {
+            int depth = locals.lastIndexOf(name);
+            if (depth != -1)
+                return -1 - depth;
+            int slot = free.indexOf(name);
+            if (slot == -1)
             {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if (expIdx >= exp.length())
-                    break;
+                slot = free.size();
+                free.add(name);
+            }
+            return slot;
+        }
+
+        int push(String index)
+        {
+            locals.add(index);
+            maxLocals = Math.max(maxLocals, locals.size());
+            return -1 - (locals.size() - 1);
+        }
+
+        void pop()
+        {
+            locals.remove(locals.size() - 1);
+        }
+
+        // 인덱스 변수의 음수 번호를 변수들 뒤의 번호로 바꾼다.
+        Node bind(Node n)
+        {
+            if (n == null)
+                return null;
+            if (n.op == Node.VAR)
+                return n.slot >= 0 ? n : Node.var(local(n.slot));
+
+            Node left = bind(n.left), right = bind(n.right);
+            if (Node.isReduction(n.op))
+                return Node.reduce(n.op, local(n.slot), left, right, bind(n.body), n.column);
+            if (n.op == Node.COND)
+            {
+                Node body = bind(n.body);
+                if (left == n.left && right == n.right && body == n.body)
+                    return n;
+                return Node.cond(left, right, body);
             }
-            tokType = NUMBER;
+            if (left == n.left && right == n.right)
+                return n;
+            return Node.op(n.op, left, right, n.column);
         }
-        else // 기타 정의되지 않은 형이라면 표현식이 종료된 것으로 간주한다.
+
+        private int local(int slot)
         {
-            token = EOE;
-            return;
+            return free.size() + (-1 - slot);
         }
     }
 
-    // true가 리턴되면 c는 연산자(일반 연산자, 괄호, 스페이스) 문자이다.
-    private boolean isDelim(char c)
+    // 에러 메시지 (에러 종류 상수값이 인덱스)
+    private static final String[] ERRORS = {"Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero"};
+
+    // 에러를 처리한다. idx는 에러가 난 토큰의 표현식 안 위치이다.
+    void handleErr(int error, int idx) throws ParserException
     {
-        if ((" +-/*^=()".indexOf(c) != -1))
-            return true;
-        return false;
+        throw new ParserException(ERRORS[error], idx + 1);
     }
 }
@@ -0,0 +1,608 @@
+/*
+    이 모듈은 여러 파서 구현에 같은 무작위 표현식들을 넣어서 결과를 비교하고 처리량을 재는 검사 도구이다.
+    Parser, Simple/Parser, StringParser는 클래스 이름이 겹치므로 각각 따로 컴파일한 디렉터리에서
+    별도의 클래스 로더로 읽어 들이고, evaluate(String)을 리플렉션으로 부른다.
+    처음 구현이 기준이며, 다른 구현의 결과(값 또는 에러 메시지)가 하나라도 다르면 종료 코드 1로 끝난다.
+    표현식은 기본 연산(+ - * / % ^, 괄호)에 리듀스 연산(reduce), 비교(compare), 논리(logic), 조건(cond) 연산을 섞어서 만든다.
+    구현마다 "@기능,..."으로 지원하는 기능을 적으면 그 기능만 쓴 식에서 비교하므로 Simple/Parser와 StringParser는
+    기본 연산의 식에서만 비교한다. (기능을 적지 않으면 모든 기능을 지원하는 것으로 본다.)
+    새 구현을 들일 때는 -gate로 그 구현만 검사해서 기준과 100% 일치하고 -speedup 배 이상 빠른지 확인한다.
+
+    javac -encoding UTF-8 -d out/main Parser.java StackParser.java
+    javac -encoding UTF-8 -d out/simple Simple/Parser.java Lexer.java NumberParser.java
+    javac -encoding UTF-8 -sourcepath "" -d out/string MyParser.java Lexer.java NumberParser.java
+    javac -encoding UTF-8 -sourcepath "" -d out/diff ParserDiff.java
+    java -cp out/diff ParserDiff [-cases 수] [-seed 수] [-rounds 수] [-gate 이름] [-speedup 배수] [이름=디렉터리:클래스[@기능,...] ...]
+ */
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+
+class ParserDiff
+{
+    // 구현을 주지 않으면 비교하는 구현들 (처음 것이 기준)
+    static final String[] DEFAULTS = {
+        "parser=out/main:Parser",
+        "stack=out/main:StackParser",
+        "simple=out/simple:Parser@basic",
+        "string=out/string:StringParser@basic"
+    };
+
+    // 기본 연산(+ - * / % ^, 괄호) 밖의 기능 플래그. 구현마다 지원하는 기능의 식에서만 기준과 비교한다.
+    static final int REDUCE = 1;  // sum, product, min, max(i, lo, hi, 식)
+    static final int COMPARE = 2; // <, <=, >, >=, ==, !=
+    static final int LOGIC = 4;   // &&, ||, and, or, 단항 !
+    static final int COND = 8;    // ?:
+    static final int ALL = 15;
+    static final String[] FEATURES = { "reduce", "compare", "logic", "cond" }; // 플래그 순서대로의 이름
+
+    // 무작위 식보다 앞에 항상 넣는 식들 (기능 이름, 식). 예전에 구현끼리 결과가 달랐던 경우들이다.
+    static final String[][] REGRESSIONS = {
+        { "basic", "7 % 2 + 100" },
+        { "basic", "-7.5 % 2 * 3" },
+        { "basic", "5 % 0" },
+        { "reduce", "sum(i, 0, 1e19, 1)" },
+        { "reduce", "2 + sum(i, 0, 1e19, 1)" },
+        { "reduce", "product(i, 1, 1e10, i)" },
+        { "reduce", "sum(i, 0.5, 3, i)" },
+        { "reduce", "max(i, 3, 1, i)" },
+        { "reduce", "sum(i, 1, 3, i / (i - 2))" },
+        { "reduce", "sum(i, 1, 3, sum(j, i, 3, i * j % 4))" },
+        { "compare", "1 < 2 == 1" },
+        { "compare", "(1 - 1) != 0" },
+        { "logic", "0 && 1 / 0" },
+        { "logic", "1 or 1 % 0" },
+        { "logic", "!(2 > 1) + 1" },
+        { "cond", "1 ? 2 : 3 ? 4 : 5" },
+        { "compare,cond", "1 < 2 ? 3 : 4 / 0" },
+        { "reduce,cond", "0 ? sum(i, 0, 1e19, 1) : 1" },
+        { "reduce,compare,logic", "sum(i, 1, 4, i > 2 && i % 2)" }
+    };
+
+    // 잘못된 표현식의 비율
+    static final double INVALID = 0.2;
+
+    // 출력할 불일치 예의 최대 개수 (구현마다)
+    static final int EXAMPLES = 5;
+
+    public static void main(String[] args) throws Exception
+    {
+        int cases = 50000;
+        long seed = 1;
+        int rounds = 5;
+        String gate = null;
+        double speedup = 0.0;
+        List<String> specs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "-cases":
+                    cases = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "-gate":
+                    gate = args[++i];
+                    break;
+                case "-speedup":
+                    speedup = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    specs.add(args[i]);
+                    break;
+            }
+        }
+        if (specs.isEmpty())
+            specs.addAll(Arrays.asList(DEFAULTS));
+
+        Impl[] impls = new Impl[specs.size()];
+        for (int i = 0; i < impls.length; i++)
+            impls[i] = Impl.load(specs.get(i));
+
+        // 고정된 식 뒤에 무작위 식을 붙인다.
+        int fixed = REGRESSIONS.length;
+        int[] masks = new int[fixed + cases];
+        String[] exprs = new String[fixed + cases];
+        for (int k = 0; k < fixed; k++)
+        {
+            masks[k] = features(REGRESSIONS[k][0]);
+            exprs[k] = REGRESSIONS[k][1];
+        }
+        int[] randomMasks = new int[cases];
+        System.arraycopy(generate(new SplittableRandom(seed), cases, randomMasks), 0, exprs, fixed, cases);
+        System.arraycopy(randomMasks, 0, masks, fixed, cases);
+        int total = fixed + cases;
+        int invalid = 0;
+
+        // 결과를 비교한다.
+        String[][] results = new String[impls.length][];
+        for (int i = 0; i < impls.length; i++)
+            results[i] = impls[i].runAll(exprs);
+        for (String r : results[0])
+            if (r.startsWith("error: "))
+                invalid++;
+        System.out.printf("%d expressions (%d fixed, seed %d), %d rejected by %s%n%n", total, fixed, seed, invalid, impls[0].name);
+
+        // 구현마다 기준과 그 구현이 모두 지원하는 기능의 식만 비교한다.
+        String[][] subsets = new String[impls.length][];
+        int[] mismatches = new int[impls.length];
+        for (int i = 0; i < impls.length; i++)
+        {
+            int supported = impls[0].features & impls[i].features;
+            List<String> subset = new ArrayList<>();
+            for (int k = 0; k < total; k++)
+            {
+                if ((masks[k] & ~supported) != 0)
+                    continue;
+                subset.add(exprs[k]);
+                if (i > 0 && !same(results[0][k], results[i][k]))
+                {
+                    if (mismatches[i]++ < EXAMPLES)
+                        System.out.printf("%-8s %s%n         %s: %s%n         %s: %s%n",
+                                impls[i].name, exprs[k], impls[0].name, results[0][k], impls[i].name, results[i][k]);
+                }
+            }
+            subsets[i] = subset.toArray(new String[0]);
+        }
+
+        // 처리량을 잰다. 기준도 각 구현이 비교한 식들로 따로 재서 속도를 비교한다.
+        // 구현들을 번갈아 재서 JIT 컴파일이 끝나기 전의 시간이 먼저 재는 구현에만 들어가지 않게 하고, 가장 빠른 회차를 쓴다.
+        // 처음 한 번은 JIT 컴파일을 위해 버린다.
+        long[] best = new long[impls.length];
+        long[] baseBest = new long[impls.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        Arrays.fill(baseBest, Long.MAX_VALUE);
+        for (int r = 0; r <= rounds; r++)
+        {
+            for (int i = 0; i < impls.length; i++)
+            {
+                long t = impls[i].time(subsets[i]);
+                long base = i == 0 ? t : impls[0].time(subsets[i]);
+                if (r > 0)
+                {
+                    best[i] = Math.min(best[i], t);
+                    baseBest[i] = Math.min(baseBest[i], base);
+                }
+            }
+        }
+        double[] nanos = new double[impls.length];
+        double[] speeds = new double[impls.length];
+        for (int i = 0; i < impls.length; i++)
+        {
+            nanos[i] = best[i] / (double) subsets[i].length;
+            speeds[i] = baseBest[i] / (double) best[i];
+        }
+
+        System.out.printf("%n%-8s %-22s %10s %10s %10s %10s %12s %8s%n",
+                "impl", "features", "compared", "agree", "mismatch", "ns/expr", "expr/s", "speed");
+        for (int i = 0; i < impls.length; i++)
+            System.out.printf("%-8s %-22s %10d %10d %10d %10.1f %12.0f %7.2fx%n", impls[i].name, featureNames(impls[i].features),
+                    subsets[i].length, subsets[i].length - mismatches[i], mismatches[i], nanos[i], 1e9 / nanos[i], speeds[i]);
+
+        // 검사 결과를 종료 코드로 알린다.
+        boolean pass = true;
+        boolean gated = false;
+        for (int i = 1; i < impls.length; i++)
+        {
+            if (gate != null && !impls[i].name.equals(gate))
+                continue;
+            gated = true;
+            if (mismatches[i] > 0)
+            {
+                System.out.printf("FAIL %s: %d mismatches%n", impls[i].name, mismatches[i]);
+                pass = false;
+            }
+            if (speeds[i] < speedup)
+            {
+                System.out.printf("FAIL %s: %.2fx is slower than the required %.2fx%n", impls[i].name, speeds[i], speedup);
+                pass = false;
+            }
+        }
+        if (gate != null && !gated)
+        {
+            System.out.println("FAIL no implementation named " + gate);
+            pass = false;
+        }
+        System.out.println(pass ? "PASS" : "FAIL");
+        System.exit(pass ? 0 : 1);
+    }
+
+    // 두 결과가 같은지 비교한다. 숫자는 값으로 비교하고 에러는 메시지로 비교한다.
+    // 열 번호가 없는 구현도 있으므로 열 번호는 두 결과에 모두 있을 때만 비교한다.
+    static boolean same(String a, String b)
+    {
+        if (a.equals(b))
+            return true;
+        boolean ae = a.startsWith("error: "), be = b.startsWith("error: ");
+        if (ae != be)
+            return false;
+        if (ae)
+        {
+            int ac = a.indexOf(" at column "), bc = b.indexOf(" at column ");
+            if (ac != -1 && bc != -1)
+                return false;
+            return (ac == -1 ? a : a.substring(0, ac)).equals(bc == -1 ? b : b.substring(0, bc));
+        }
+        try
+        {
+            return Double.compare(Double.parseDouble(a), Double.parseDouble(b)) == 0;
+        }
+        catch (NumberFormatException exc)
+        {
+            return false;
+        }
+    }
+
+    // 무작위 표현식들. 식마다 쓸 수 있는 기능을 골라서 만들고, 실제로 쓴 기능을 masks에 넣는다.
+    // 일부는 한 글자를 지우거나 끼워 넣거나 뒷부분을 잘라서 잘못된 식으로 만든다.
+    static String[] generate(SplittableRandom rnd, int count, int[] masks)
+    {
+        String[] exprs = new String[count];
+        Generator g = new Generator(rnd);
+        for (int i = 0; i < count; i++)
+        {
+            // 기본 연산만 쓰는 식과 기능을 무작위로 골라 섞은 식이 반씩 나오게 한다.
+            int allowed = rnd.nextBoolean() ? 0 : 1 + rnd.nextInt(ALL);
+            exprs[i] = g.next(allowed);
+            masks[i] = g.used;
+        }
+        return exprs;
+    }
+
+    // 기능 이름들("reduce,cond" 등)을 기능 플래그로 바꾼다. "basic"이나 빈 문자열은 기본 연산만, "all"은 모든 기능이다.
+    static int features(String names)
+    {
+        int mask = 0;
+        for (String name : names.split(","))
+        {
+            if (name.isEmpty() || name.equals("basic"))
+                continue;
+            if (name.equals("all"))
+            {
+                mask |= ALL;
+                continue;
+            }
+            int i = Arrays.asList(FEATURES).indexOf(name);
+            if (i == -1)
+                throw new IllegalArgumentException("Unknown feature " + name + ", expected one of " + String.join(", ", FEATURES));
+            mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    // 기능 플래그를 이름들로 바꾼다.
+    static String featureNames(int mask)
+    {
+        if (mask == ALL)
+            return "all";
+        StringJoiner names = new StringJoiner(",");
+        for (int i = 0; i < FEATURES.length; i++)
+            if ((mask & 1 << i) != 0)
+                names.add(FEATURES[i]);
+        return mask == 0 ? "basic" : names.toString();
+    }
+
+    // 무작위 표현식 생성기. 우선순위가 낮은 연산부터 Parser의 문법을 따라 내려간다.
+    // allowed에 없는 기능은 만들지 않으므로 기능이 없는 식은 기본 연산(+ - * / % ^, 괄호)만 쓴다.
+    // 기능이 식의 크기를 몇 배씩 늘리지 않도록 ?:, 논리 연산, 리듀스 연산은 바깥쪽 두 단계의 괄호 안에서만 만든다.
+    static final class Generator
+    {
+        private static final String[] REDUCTIONS = { "sum", "product", "min", "max" };
+        private static final String[] COMPARISONS = { " < ", " <= ", " > ", " >= ", " == ", " != " };
+        private static final String[] LOGICAL = { " && ", " || ", " and ", " or " };
+        private static final String INDEXES = "ijk"; // 중첩된 리듀스 연산의 인덱스 변수 이름
+
+        private final SplittableRandom rnd;
+        private final StringBuilder sb = new StringBuilder();
+        private int allowed; // 쓸 수 있는 기능
+        int used;            // 마지막 식에서 쓴 기능
+        private int indexes; // 현재 위치를 감싼 리듀스 연산의 수
+
+        Generator(SplittableRandom rnd)
+        {
+            this.rnd = rnd;
+        }
+
+        String next(int allowed)
+        {
+            this.allowed = allowed;
+            used = 0;
+            indexes = 0;
+            sb.setLength(0);
+            condition(0);
+            if (rnd.nextDouble() < INVALID)
+                mutate();
+            return sb.toString();
+        }
+
+        // 기능 f를 쓸 수 있으면 1/weight의 확률로 쓰기로 하고 used에 기록한다.
+        private boolean use(int f, int weight)
+        {
+            if ((allowed & f) == 0 || rnd.nextInt(weight) != 0)
+                return false;
+            used |= f;
+            return true;
+        }
+
+        private void condition(int depth)
+        {
+            logical(depth);
+            if (depth < 2 && use(COND, 4))
+            {
+                sb.append(" ? ");
+                condition(depth + 1);
+                sb.append(" : ");
+                condition(depth + 1);
+            }
+        }
+
+        private void logical(int depth)
+        {
+            comparison(depth);
+            while (depth < 2 && use(LOGIC, 3))
+            {
+                sb.append(LOGICAL[rnd.nextInt(LOGICAL.length)]);
+                comparison(depth);
+            }
+        }
+
+        private void comparison(int depth)
+        {
+            expression(depth);
+            if (use(COMPARE, 3))
+            {
+                sb.append(COMPARISONS[rnd.nextInt(COMPARISONS.length)]);
+                expression(depth);
+            }
+        }
+
+        private void expression(int depth)
+        {
+            term(depth);
+            int n = rnd.nextInt(depth == 0 ? 4 : 3);
+            for (int i = 0; i < n; i++)
+            {
+                sb.append(rnd.nextBoolean() ? " + " : " - ");
+                term(depth);
+            }
+        }
+
+        private void term(int depth)
+        {
+            factor(depth);
+            int n = rnd.nextInt(3);
+            for (int i = 0; i < n; i++)
+            {
+                // * 4, / 1, % 1의 비율로 고른다.
+                switch (rnd.nextInt(6))
+                {
+                    case 0:
+                        sb.append(" / ");
+                        break;
+                    case 1:
+                        sb.append(" % ");
+                        break;
+                    default:
+                        sb.append(" * ");
+                        break;
+                }
+                factor(depth);
+            }
+        }
+
+        private void factor(int depth)
+        {
+            unary(depth);
+            if (rnd.nextInt(5) == 0)
+            {
+                sb.append('^');
+                // 지수는 주로 작은 정수이지만 0, 음수, 소수도 섞는다.
+                switch (rnd.nextInt(6))
+                {
+                    case 0:
+                        sb.append('0');
+                        break;
+                    case 1:
+                        sb.append('-').append(1 + rnd.nextInt(3));
+                        break;
+                    case 2:
+                        sb.append(rnd.nextInt(8)).append(".5");
+                        break;
+                    default:
+                        sb.append(1 + rnd.nextInt(6));
+                        break;
+                }
+            }
+        }
+
+        private void unary(int depth)
+        {
+            if (use(LOGIC, 10))
+                sb.append('!');
+            else if (rnd.nextInt(8) == 0)
+                sb.append(rnd.nextBoolean() ? '-' : '+');
+
+            if (depth < 4 && rnd.nextInt(4) == 0)
+            {
+                sb.append('(');
+                condition(depth + 1);
+                sb.append(')');
+            }
+            else if (depth < 2 && indexes < INDEXES.length() && use(REDUCE, 6))
+                reduction(depth);
+            else if (indexes > 0 && rnd.nextInt(3) == 0)
+                sb.append(INDEXES.charAt(rnd.nextInt(indexes)));
+            else
+                number();
+        }
+
+        // 리듀스 연산. 범위는 대부분 짧지만 빈 범위, 소수 경계, 셀 수 없이 큰 범위도 섞는다.
+        private void reduction(int depth)
+        {
+            sb.append(REDUCTIONS[rnd.nextInt(REDUCTIONS.length)]).append('(').append(INDEXES.charAt(indexes)).append(", ");
+            int lo = rnd.nextInt(4);
+            sb.append(lo).append(", ");
+            switch (rnd.nextInt(12))
+            {
+                case 0:
+                    sb.append(rnd.nextBoolean() ? "1e30" : "1e12"); // 한 글자를 지워도 오래 걸리는 범위가 되지 않는 수
+                    break;
+                case 1:
+                    sb.append(lo).append(".5");
+                    break;
+                default:
+                    sb.append(lo - 1 + rnd.nextInt(6)); // lo - 1이면 빈 범위
+                    break;
+            }
+            sb.append(", ");
+            indexes++;
+            condition(depth + 1);
+            indexes--;
+            sb.append(')');
+        }
+
+        private void number()
+        {
+            switch (rnd.nextInt(6))
+            {
+                case 0:
+                    sb.append('0');
+                    break;
+                case 1:
+                    sb.append(rnd.nextInt(1000)).append('.').append(rnd.nextInt(100));
+                    break;
+                case 2:
+                    sb.append(rnd.nextInt(10)).append('e').append(rnd.nextInt(4));
+                    break;
+                default:
+                    sb.append(1 + rnd.nextInt(20));
+                    break;
+            }
+        }
+
+        // 끼워 넣는 글자는 식에 쓴 기능의 연산자 문자만 고르므로 잘못된 식도 같은 구현들끼리 비교한다.
+        private void mutate()
+        {
+            String junk = "()+-*/%^. x";
+            if ((used & COMPARE) != 0)
+                junk += "<>=!";
+            if ((used & LOGIC) != 0)
+                junk += "&|!";
+            if ((used & COND) != 0)
+                junk += "?:";
+            if ((used & REDUCE) != 0)
+                junk += ",i";
+
+            int at = rnd.nextInt(sb.length() + 1);
+            switch (rnd.nextInt(3))
+            {
+                case 0:
+                    if (at < sb.length())
+                        sb.deleteCharAt(at);
+                    break;
+                case 1:
+                    sb.insert(at, junk.charAt(rnd.nextInt(junk.length())));
+                    break;
+                default:
+                    sb.setLength(at);
+                    break;
+            }
+        }
+    }
+
+    // 별도의 클래스 로더로 읽어 들인 파서 구현 하나
+    static final class Impl
+    {
+        final String name;
+        final Object parser;
+        final Method evaluate;
+        final int features; // 지원하는 기능 플래그
+
+        Impl(String name, Object parser, Method evaluate, int features)
+        {
+            this.name = name;
+            this.parser = parser;
+            this.evaluate = evaluate;
+            this.features = features;
+        }
+
+        // "이름=디렉터리:클래스[@기능,...]" 꼴의 구현을 읽어 들인다. 기능을 주지 않으면 모든 기능을 지원하는 것으로 본다.
+        static Impl load(String spec) throws Exception
+        {
+            int features = ALL;
+            int at = spec.lastIndexOf('@');
+            if (at != -1)
+            {
+                features = features(spec.substring(at + 1));
+                spec = spec.substring(0, at);
+            }
+            int eq = spec.indexOf('=');
+            int colon = spec.lastIndexOf(':');
+            if (eq == -1 || colon < eq)
+                throw new IllegalArgumentException("Expected name=directory:Class[@features], got " + spec);
+
+            URL dir = new File(spec.substring(eq + 1, colon)).toURI().toURL();
+            // 부모를 플랫폼 클래스 로더로 두어 구현끼리, 그리고 이 도구와 클래스가 섞이지 않게 한다.
+            ClassLoader loader = new URLClassLoader(new URL[] { dir }, ClassLoader.getPlatformClassLoader());
+            Class<?> c = Class.forName(spec.substring(colon + 1), true, loader);
+            Constructor<?> ctor = c.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            Method m = c.getMethod("evaluate", String.class);
+            m.setAccessible(true);
+            return new Impl(spec.substring(0, eq), ctor.newInstance(), m, features);
+        }
+
+        // 표현식 하나를 계산한 결과. 값이면 그 문자열, 에러이면 "error: "와 메시지
+        String run(String expr)
+        {
+            try
+            {
+                return String.valueOf(evaluate.invoke(parser, expr));
+            }
+            catch (InvocationTargetException exc)
+            {
+                Throwable t = exc.getCause();
+                if (t.getClass().getSimpleName().equals("ParserException"))
+                    return "error: " + t;
+                return "error: " + t.getClass().getName();
+            }
+            catch (IllegalAccessException exc)
+            {
+                throw new IllegalStateException(exc);
+            }
+        }
+
+        String[] runAll(String[] exprs)
+        {
+            String[] results = new String[exprs.length];
+            for (int i = 0; i < exprs.length; i++)
+                results[i] = run(exprs[i]);
+            return results;
+        }
+
+        // 모든 표현식을 한 번 계산하는 데 걸린 시간 (ns)
+        long time(String[] exprs)
+        {
+            long t0 = System.nanoTime();
+            for (String e : exprs)
+            {
+                try
+                {
+                    evaluate.invoke(parser, e);
+                }
+                catch (ReflectiveOperationException exc)
+                {
+                    // 에러도 정상적인 처리 경로로 본다.
+                }
+            }
+            return System.nanoTime() - t0;
+        }
+    }
+}
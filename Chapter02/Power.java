@@ -0,0 +1,52 @@
+/*
+    이 모듈은 Parser(evalExp4)와 SBasic(evalExp4)이 함께 사용하는 지수 계산을 포함한다.
+    작은 정수 지수는 제곱-곱셈(square-and-multiply)으로 log(n)번만 곱하고,
+    큰 정수 지수와 정수가 아닌 지수는 Math.pow()로 계산한다.
+ */
+
+class Power
+{
+    // 제곱-곱셈으로 계산할 정수 지수의 최댓값.
+    // 제곱할 때마다 상대 오차가 두 배가 되므로 지수 n에서 약 log2(n)비트를 잃는다. (64 이하에서 최대 수십 ulp)
+    // 밑이 1에 가까우면 큰 지수에서도 결과가 0이나 무한대가 되지 않으므로, 이보다 큰 지수는 Math.pow()로 계산한다.
+    static final long MAX_INT_EXPONENT = 64;
+
+    // base ^ exponent를 구한다.
+    static double pow(double base, double exponent)
+    {
+        // 자주 쓰는 지수에 대한 빠른 경로
+        if (exponent == 0.0)
+            return 1.0;
+        if (exponent == 1.0)
+            return base;
+        if (exponent == 2.0)
+            return base * base;
+        if (exponent == 3.0)
+            return base * base * base;
+        if (exponent == 0.5 && base > 0.0 && base != Double.POSITIVE_INFINITY)
+            return Math.sqrt(base); // -0과 -무한대는 Math.pow()와 결과가 달라서 제외한다.
+
+        // 작은 양의 정수 지수는 제곱-곱셈으로 계산한다.
+        if (exponent > 0.0 && exponent <= MAX_INT_EXPONENT && exponent == Math.rint(exponent))
+            return intPow(base, (long) exponent);
+
+        // 큰 지수, 음수나 정수가 아닌 지수, NaN, 무한대
+        return Math.pow(base, exponent);
+    }
+
+    // 지수의 비트를 하나씩 보면서 제곱과 곱셈을 반복한다.
+    static double intPow(double base, long n)
+    {
+        double result = 1.0;
+
+        while (n > 0)
+        {
+            if ((n & 1) != 0)
+                result *= base;
+            n >>>= 1;
+            if (n > 0)
+                base *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+// 지수 크기에 따른 반복 곱셈(이전 evalExp4)과 Power.pow()의 속도 비교
+class PowerBench
+{
+    public static void main(String[] args)
+    {
+        double[] exponents = { 2, 3, 10, 100, 1e4, 1e6, 1e8, 0.5, 2.5 };
+        double base = 1.0000001; // 큰 지수에서도 무한대가 되지 않는 밑
+
+        // JIT 컴파일을 위해 먼저 돌린다.
+        for (int i = 0; i < 200000; i++)
+        {
+            Power.pow(base, exponents[i % exponents.length]);
+            loopPow(base, 100);
+        }
+
+        System.out.println("exponent        loop(ns)      Power.pow(ns)   loop result          Power.pow result");
+        for (double ex : exponents)
+        {
+            // 반복 곱셈은 큰 지수에서 매우 느리므로 반복 횟수를 줄인다.
+            int loopReps = (int) Math.max(1, Math.min(100000, 1e8 / Math.max(ex, 1)));
+            int powReps = 1000000;
+
+            double r1 = 0.0, r2 = 0.0;
+            long t0 = System.nanoTime();
+            for (int i = 0; i < loopReps; i++)
+                r1 = loopPow(base, ex);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < powReps; i++)
+                r2 = Power.pow(base, ex);
+            long t2 = System.nanoTime();
+
+            System.out.printf("%-12s %14.1f %16.1f   %-20s %s%n", ex,
+                    (t1 - t0) / (double) loopReps, (t2 - t1) / (double) powReps, r1, r2);
+        }
+        checkAccuracy();
+    }
+
+    // 1에 가까운 밑의 큰 정수 지수와, 제곱-곱셈으로 계산하는 작은 지수에서 Math.pow()와의 차이
+    static void checkAccuracy()
+    {
+        for (double b : new double[] { 1.0000001, 0.9999999 })
+        {
+            double ex = Integer.MAX_VALUE;
+            System.out.printf("%s ^ %.0f: relative error %s%n", b, ex, Power.pow(b, ex) / Math.pow(b, ex) - 1.0);
+        }
+
+        java.util.SplittableRandom rnd = new java.util.SplittableRandom(7);
+        double worst = 0.0;
+        for (int i = 0; i < 1000000; i++)
+        {
+            double b = rnd.nextDouble(0.5, 2.0);
+            double ex = 1 + rnd.nextInt((int) Power.MAX_INT_EXPONENT);
+            double expected = Math.pow(b, ex);
+            worst = Math.max(worst, Math.abs(Power.pow(b, ex) - expected) / Math.ulp(expected));
+        }
+        System.out.printf("exponent <= %d: at most %.0f ulp from Math.pow()%n", Power.MAX_INT_EXPONENT, worst);
+    }
+
+    // 이전 Parser.evalExp4()의 계산 방식. 지수를 정수로 자르고 그 횟수만큼 곱한다.
+    static double loopPow(double result, double partialResult)
+    {
+        double ex = result;
+        int t;
+
+        if (partialResult == 0.0)
+            return 1.0;
+        for (t = (int) partialResult - 1; t > 0; t--)
+            result = result * ex;
+        return result;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+    이 모듈은 StringParser의 할당식(x = 식)들을 스프레드시트처럼 다시 계산하는 엔진을 포함한다.
+    각 식이 읽는 변수를 기록해 두고, 값이 바뀐 변수에 의존하는 식만 위상 순서로 다시 계산한다.
+    서로 의존하지 않는 식들은 스레드 풀에서 동시에 계산할 수 있다.
+ */
+import java.util.*;
+import java.util.concurrent.*;
+
+class Recalc {
+    private final StringParser parser;
+
+    private final ArrayList<Formula> formulas = new ArrayList<>();
+    private Formula[] bySlot = new Formula[16];        // 변수를 정의하는 식
+    private ArrayList<Formula>[] readers = newLists(16); // 변수를 읽는 식들
+    private final ArrayList<Formula> dirty = new ArrayList<>(); // 다시 계산할 식 (하류는 recalc()에서 찾는다.)
+    private final ArrayList<Integer> changed = new ArrayList<>(); // 값이 바뀐 입력 변수
+
+    Recalc(StringParser parser) {
+        this.parser = parser;
+    }
+
+    // 할당식을 등록한다. 같은 변수를 정의하는 식이 있으면 바꾼다.
+    // 순환 참조가 생기면 등록하지 않고 IllegalArgumentException을 발생시킨다.
+    public void define(String formula) throws ParserException {
+        StringNode root = parser.compile(formula).root();
+        if (root.kind != StringNode.ASSIGN)
+            throw new IllegalArgumentException("Not an assignment: " + formula);
+
+        // 식이 읽는 변수들
+        BitSet reads = new BitSet();
+        collectReads(root.left, reads);
+        Formula f = new Formula(formula, root, reads.stream().toArray());
+        grow(parser.slotCount());
+
+        Formula old = bySlot[f.target];
+        if (reads.get(f.target) || reaches(f.target, reads))
+            throw new IllegalArgumentException("Circular reference: " + formula);
+
+        if (old != null) {
+            formulas.remove(old);
+            for (int r : old.reads)
+                readers[r].remove(old);
+            dirty.remove(old);
+        }
+        formulas.add(f);
+        bySlot[f.target] = f;
+        for (int r : f.reads)
+            readers[r].add(f);
+        dirty.add(f);
+    }
+
+    // 입력 변수의 값을 바꾼다. 이 변수를 읽는 식들은 다음 recalc()에서 다시 계산된다.
+    public void set(String name, double v) {
+        set(name, Value.of(v));
+    }
+
+    public void set(String name, String v) {
+        set(name, Value.of(v));
+    }
+
+    private void set(String name, Value v) {
+        int slot = parser.slotOf(name);
+        grow(parser.slotCount());
+        if (bySlot[slot] != null)
+            throw new IllegalArgumentException(name + " is defined by a formula");
+        parser.setValue(slot, v.settle());
+        changed.add(slot);
+    }
+
+    // 변수의 현재 값. 값이 없거나 식에서 에러가 났으면 null을 반환한다.
+    public String get(String name) {
+        Value v = parser.value(parser.slotOf(name));
+        return v == null ? null : v.toString();
+    }
+
+    // 변수를 정의하는 식에서 마지막으로 난 에러. 없으면 null을 반환한다.
+    public ParserException error(String name) {
+        int slot = parser.slotOf(name);
+        grow(parser.slotCount());
+        return bySlot[slot] == null ? null : bySlot[slot].error;
+    }
+
+    // 바뀐 값에 영향을 받는 식들만 위상 순서로 한 스레드에서 다시 계산한다.
+    // 계산한 식의 개수를 반환한다.
+    public int recalc() {
+        int n = 0;
+        for (List<Formula> level : levels()) {
+            for (Formula f : level)
+                f.run(parser);
+            n += level.size();
+        }
+        return n;
+    }
+
+    // 같은 단계의 식들은 서로 의존하지 않으므로 pool에서 동시에 계산한다.
+    public int recalc(ExecutorService pool) throws InterruptedException {
+        int n = 0;
+        for (List<Formula> level : levels()) {
+            if (level.size() == 1)
+                level.get(0).run(parser);
+            else {
+                List<Callable<Void>> tasks = new ArrayList<>(level.size());
+                for (Formula f : level)
+                    tasks.add(() -> {
+                        f.run(parser);
+                        return null;
+                    });
+                // invokeAll()은 모든 작업이 끝나야 반환되므로 다음 단계는 이 단계의 결과를 볼 수 있다.
+                for (Future<Void> done : pool.invokeAll(tasks)) {
+                    try {
+                        done.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+            n += level.size();
+        }
+        return n;
+    }
+
+    // 다시 계산할 식들을 의존 단계별로 나눈다. 각 단계의 식은 앞 단계의 식에만 의존한다.
+    private List<List<Formula>> levels() {
+        // 바뀐 변수와 새로 등록한 식에서 출발해서 영향을 받는 식들을 모두 찾는다.
+        ArrayDeque<Formula> work = new ArrayDeque<>(dirty);
+        ArrayList<Formula> affected = new ArrayList<>();
+        for (int slot : changed)
+            work.addAll(readers[slot]);
+        dirty.clear();
+        changed.clear();
+
+        while (!work.isEmpty()) {
+            Formula f = work.poll();
+            if (f.pending)
+                continue;
+            f.pending = true;
+            affected.add(f);
+            work.addAll(readers[f.target]);
+        }
+
+        // 영향을 받는 식들 사이의 의존 개수를 센다. (Kahn 알고리즘)
+        for (Formula f : affected) {
+            f.waiting = 0;
+            for (int r : f.reads) {
+                Formula dep = bySlot[r];
+                if (dep != null && dep.pending)
+                    f.waiting++;
+            }
+        }
+
+        List<List<Formula>> levels = new ArrayList<>();
+        ArrayList<Formula> level = new ArrayList<>();
+        for (Formula f : affected) {
+            if (f.waiting == 0)
+                level.add(f);
+        }
+        while (!level.isEmpty()) {
+            levels.add(level);
+            ArrayList<Formula> next = new ArrayList<>();
+            for (Formula f : level) {
+                f.pending = false;
+                for (Formula g : readers[f.target]) {
+                    if (g.pending && --g.waiting == 0)
+                        next.add(g);
+                }
+            }
+            level = next;
+        }
+        return levels;
+    }
+
+    // 변수 target을 읽는 식을 따라가서 reads 중 하나를 정의하는 식에 닿는지 확인한다.
+    private boolean reaches(int target, BitSet reads) {
+        BitSet seen = new BitSet();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.add(target);
+        while (!work.isEmpty()) {
+            int slot = work.poll();
+            if (slot >= readers.length)
+                continue;
+            for (Formula f : readers[slot]) {
+                if (f.target == target)
+                    continue; // 바뀔 예정인 이전 식
+                if (reads.get(f.target))
+                    return true;
+                if (!seen.get(f.target)) {
+                    seen.set(f.target);
+                    work.add(f.target);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void collectReads(StringNode n, BitSet reads) {
+        while (n != null) {
+            if (n.kind == StringNode.VAR)
+                reads.set(n.slot);
+            collectReads(n.right, reads);
+            n = n.left;
+        }
+    }
+
+    private void grow(int slots) {
+        if (slots <= bySlot.length)
+            return;
+        int size = Math.max(slots, bySlot.length * 2);
+        bySlot = Arrays.copyOf(bySlot, size);
+        ArrayList<Formula>[] more = newLists(size);
+        System.arraycopy(readers, 0, more, 0, readers.length);
+        readers = more;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // 제네릭 배열은 raw 타입으로만 만들 수 있다.
+    private ArrayList<Formula>[] newLists(int size) {
+        ArrayList<Formula>[] lists = new ArrayList[size];
+        int from = readers == null ? 0 : readers.length;
+        for (int i = from; i < size; i++)
+            lists[i] = new ArrayList<>();
+        return lists;
+    }
+
+    // 등록된 할당식
+    private static final class Formula {
+        final String text;
+        final StringNode root;
+        final int target; // 할당하는 변수
+        final int[] reads; // 읽는 변수들
+        ParserException error;
+        boolean pending;  // 다시 계산할 차례를 기다리는 중
+        int waiting;      // 아직 계산되지 않은 의존 식의 개수
+
+        Formula(String text, StringNode root, int[] reads) {
+            this.text = text;
+            this.root = root;
+            this.target = root.slot;
+            this.reads = reads;
+        }
+
+        // 식을 계산해서 변수에 넣는다. 에러가 나면 변수는 값이 없는 상태가 된다.
+        void run(StringParser parser) {
+            try {
+                Value v = parser.eval(root);
+                if (v != null)
+                    v.settle();
+                error = null;
+            } catch (ParserException e) {
+                parser.setValue(target, null);
+                error = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+    이 모듈은 컴파일된 표현식의 리듀스 연산 sum, product, min, max(i, lo, hi, 식)를 계산한다.
+    인덱스 범위를 LEAF개씩의 조각으로 나누고, 조각들을 fork/join으로 여러 코어에서 계산한 뒤 둘씩 합친다.
+    조각을 나누는 방법은 범위의 크기로만 정해지므로 코어 수나 실행 순서와 관계없이 결과가 항상 같다.
+    합은 조각 안에서 보정 합(Neumaier의 Kahan 합)으로 더하고, 조각끼리는 보정 값까지 함께 합친다.
+    한 조각에서 에러가 나면 그 인덱스보다 뒤의 조각들은 계산을 멈추고, 아직 시작하지 않은 작업은 건너뛴다.
+    앞의 조각들은 끝까지 계산하므로 알리는 에러는 항상 가장 앞 인덱스의 에러(차례로 계산할 때의 에러)이다.
+ */
+import java.util.*;
+import java.util.concurrent.*;
+
+class Reduction
+{
+    // 한 작업이 직접 계산하는 인덱스 개수. 이보다 큰 범위는 반으로 나눈다.
+    static final long LEAF = 4096;
+
+    // 한 리듀스 연산이 계산할 수 있는 인덱스 개수의 상한 (약 43억)
+    static final long MAX_STEPS = 1L << 32;
+
+    // 이보다 인덱스가 많으면 본문에서 인덱스와 관계없는 부분식을 미리 계산한다(Optimizer.hoist).
+    static final long HOIST = 16;
+
+    // 리듀스 노드의 값을 구한다. vars는 바깥 식의 값 배열이며 바꾸지 않는다.
+    static double reduce(Node n, double[] vars) throws ParserException
+    {
+        double lo = Expression.eval(n.left, vars);
+        double hi = Expression.eval(n.right, vars);
+        long count = steps(n, lo, hi);
+
+        if (count > HOIST)
+        {
+            Node body = Optimizer.hoist(n.body, n.slot, vars);
+            if (body != n.body)
+                n = Node.reduce(n.op, n.slot, n.left, n.right, body, n.column);
+        }
+
+        if (count <= LEAF)
+            return leaf(n, vars, lo, 0, count, null).value(n.op);
+
+        State state = new State();
+        Part p;
+        try
+        {
+            p = new Task(n, vars, lo, 0, count, state).invoke();
+        }
+        catch (RuntimeException e)
+        {
+            // 작업 스레드에서 난 에러 중 가장 앞 인덱스의 에러를 알린다.
+            if (state.error != null)
+                throw state.error;
+            throw e;
+        }
+        return p.value(n.op);
+    }
+
+    // 인덱스 lo, lo + 1, ...가 hi를 넘지 않는 개수를 구한다.
+    // 범위가 NaN이거나(Invalid Range) 무한대이거나 인덱스가 MAX_STEPS개보다 많으면(Range Too Large)
+    // 리듀스 연산의 위치에서 에러를 발생시킨다.
+    static long steps(Node n, double lo, double hi) throws ParserException
+    {
+        if (Double.isNaN(lo) || Double.isNaN(hi))
+            throw new ParserException("Invalid Range", n.column);
+        if (Double.isInfinite(lo) || Double.isInfinite(hi))
+            throw new ParserException("Range Too Large", n.column);
+        if (hi < lo)
+            return 0;
+        // long으로 바꾸면 9.2e18 이상은 Long.MAX_VALUE로 잘리고 + 1에서 음수가 되므로 double인 채로 비교한다.
+        double last = Math.floor(hi - lo);
+        if (last >= MAX_STEPS)
+            throw new ParserException("Range Too Large", n.column);
+        return (long) last + 1;
+    }
+
+    // 조각을 나누는 위치. 조각 경계에 맞춘다.
+    private static long split(long from, long to)
+    {
+        return from + ((to - from) / LEAF + 1) / 2 * LEAF;
+    }
+
+    // from번째부터 to - 1번째까지의 인덱스를 차례로 계산한다.
+    // state가 있으면(fork/join) 에러를 state에 기록하고, 앞 인덱스에서 에러가 났으면 계산을 멈춘다.
+    private static Part leaf(Node n, double[] vars, double lo, long from, long to, State state) throws ParserException
+    {
+        double[] frame = vars.clone(); // 인덱스 변수는 조각마다 따로 둔다.
+        Node body = n.body;
+        Acc acc = new Acc(n.op);
+
+        for (long k = from; k < to; k++)
+        {
+            if (state != null && (k & 255) == 0 && k > state.failedAt)
+                throw Failure.STOP;
+            frame[n.slot] = lo + k;
+            try
+            {
+                acc.add(Expression.eval(body, frame));
+            }
+            catch (ParserException e)
+            {
+                if (state == null)
+                    throw e;
+                state.fail(k, e);
+                throw Failure.STOP;
+            }
+        }
+        return acc.part();
+    }
+
+    // 빈 범위의 값
+    private static double identity(int op)
+    {
+        switch (op)
+        {
+            case Node.SUM:
+                return 0.0;
+            case Node.PRODUCT:
+                return 1.0;
+            case Node.MIN:
+                return Double.POSITIVE_INFINITY;
+            case Node.MAX:
+                return Double.NEGATIVE_INFINITY;
+            default:
+                throw new IllegalStateException("Unknown node " + op);
+        }
+    }
+
+    // 조각 하나 안에서 인덱스의 값을 차례로 모은다.
+    private static final class Acc
+    {
+        final int op;
+        double acc;  // 합, 곱, 최솟값 또는 최댓값
+        double comp; // 합에서 잃어버린 아래 자리 값
+
+        Acc(int op)
+        {
+            this.op = op;
+            acc = identity(op);
+        }
+
+        void add(double x)
+        {
+            switch (op)
+            {
+                case Node.SUM:
+                    double t = acc + x;
+                    comp += Math.abs(acc) >= Math.abs(x) ? (acc - t) + x : (x - t) + acc;
+                    acc = t;
+                    break;
+                case Node.PRODUCT:
+                    acc *= x;
+                    break;
+                case Node.MIN:
+                    acc = Math.min(acc, x);
+                    break;
+                case Node.MAX:
+                    acc = Math.max(acc, x);
+                    break;
+            }
+        }
+
+        Part part()
+        {
+            return new Part(acc, comp);
+        }
+    }
+
+    // 인덱스의 값을 호출한 쪽에서 차례로 넘겨받아 reduce()와 같은 값을 만든다.
+    // (Gradient는 미분 값을 모으는 반복문에서 값도 함께 구한다.)
+    // 조각을 나누고 합치는 순서가 reduce()와 같으므로 결과가 비트 단위로 같다.
+    static final class Serial
+    {
+        private final int op;
+        private final long count;
+        private final List<Part> parts = new ArrayList<>(); // 끝난 조각들의 결과
+        private Acc leaf;
+        private long added;
+
+        Serial(int op, long count)
+        {
+            this.op = op;
+            this.count = count;
+            leaf = new Acc(op);
+        }
+
+        // 다음 인덱스의 값을 더한다.
+        void add(double x)
+        {
+            leaf.add(x);
+            if (++added % LEAF == 0 || added == count)
+            {
+                parts.add(leaf.part());
+                leaf = new Acc(op);
+            }
+        }
+
+        // count개의 값을 모두 넘겨받은 뒤의 결과
+        double value()
+        {
+            return (count == 0 ? leaf.part() : combine(0, count)).value(op);
+        }
+
+        // Task.compute()와 같은 순서로 조각들을 합친다.
+        private Part combine(long from, long to)
+        {
+            if (to - from <= LEAF)
+                return parts.get((int) (from / LEAF));
+            long mid = split(from, to);
+            return combine(from, mid).combine(op, combine(mid, to));
+        }
+    }
+
+    // 조각 하나의 결과
+    private static final class Part
+    {
+        final double acc;  // 합, 곱, 최솟값 또는 최댓값
+        final double comp; // 합의 보정 값
+
+        Part(double acc, double comp)
+        {
+            this.acc = acc;
+            this.comp = comp;
+        }
+
+        // 앞 조각(this)과 뒤 조각(p)을 합친다.
+        Part combine(int op, Part p)
+        {
+            switch (op)
+            {
+                case Node.SUM:
+                    double t = acc + p.acc;
+                    double err = Math.abs(acc) >= Math.abs(p.acc) ? (acc - t) + p.acc : (p.acc - t) + acc;
+                    return new Part(t, comp + p.comp + err);
+                case Node.PRODUCT:
+                    return new Part(acc * p.acc, 0.0);
+                case Node.MIN:
+                    return new Part(Math.min(acc, p.acc), 0.0);
+                default:
+                    return new Part(Math.max(acc, p.acc), 0.0);
+            }
+        }
+
+        double value(int op)
+        {
+            // 합이 무한대나 NaN이면 보정 값은 의미가 없다.
+            if (op == Node.SUM && Double.isFinite(acc))
+                return acc + comp;
+            return acc;
+        }
+    }
+
+    // 한 번의 reduce()에서 작업들이 함께 보는 에러 상태
+    private static final class State
+    {
+        volatile long failedAt = Long.MAX_VALUE; // 에러가 난 가장 앞 인덱스
+        ParserException error;                   // 그 인덱스의 에러
+
+        synchronized void fail(long k, ParserException e)
+        {
+            if (k < failedAt)
+            {
+                error = e;
+                failedAt = k;
+            }
+        }
+    }
+
+    // 범위를 반으로 나눠서 계산하는 작업
+    private static final class Task extends RecursiveTask<Part>
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Node n;
+        final double[] vars;
+        final double lo;
+        final long from, to;
+        final State state;
+
+        Task(Node n, double[] vars, double lo, long from, long to, State state)
+        {
+            this.n = n;
+            this.vars = vars;
+            this.lo = lo;
+            this.from = from;
+            this.to = to;
+            this.state = state;
+        }
+
+        @Override
+        protected Part compute()
+        {
+            // 앞 인덱스에서 이미 에러가 났으면 이 범위는 계산할 필요가 없다.
+            if (from > state.failedAt)
+                throw Failure.STOP;
+
+            long count = to - from;
+            if (count <= LEAF)
+            {
+                try
+                {
+                    return leaf(n, vars, lo, from, to, state);
+                }
+                catch (ParserException e)
+                {
+                    throw new IllegalStateException(e); // state가 있으면 leaf()는 에러를 기록하고 STOP을 던진다.
+                }
+            }
+
+            long mid = split(from, to);
+            Task right = new Task(n, vars, lo, mid, to, state);
+            right.fork();
+            Part left;
+            try
+            {
+                left = new Task(n, vars, lo, from, mid, state).compute();
+            }
+            catch (RuntimeException e)
+            {
+                right.cancel(false); // 아직 시작하지 않았으면 실행되지 않는다.
+                throw e;
+            }
+            return left.combine(n.op, right.join());
+        }
+    }
+
+    // 에러가 난 뒤 작업들을 멈추게 한다. 에러 자체는 State에 있다.
+    private static final class Failure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        static final Failure STOP = new Failure();
+
+        private Failure()
+        {
+            super(null, null, false, false);
+        }
+    }
+}
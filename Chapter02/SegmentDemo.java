@@ -0,0 +1,74 @@
+// 열 파일에 대해 표현식 계산하기 (Java 21에서는 javac, java 모두 --enable-preview --release 21 / --enable-preview)
+// java SegmentDemo -gen 행 수 파일          : 0.5 ~ 8.5 사이의 난수로 열 파일을 만든다.
+// java SegmentDemo 표현식 결과 파일 변수=파일 ... : 열 파일들로 표현식을 계산해서 결과 파일에 쓴다.
+import java.io.*;
+import java.lang.foreign.*;
+import java.lang.management.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+class SegmentDemo
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 3 && args[0].equals("-gen"))
+        {
+            generate(Long.parseLong(args[1]), Paths.get(args[2]));
+            return;
+        }
+        if (args.length < 2)
+        {
+            System.err.println("Usage: java SegmentDemo <expression> <output> [name=file ...]");
+            System.err.println("       java SegmentDemo -gen <rows> <file>");
+            return;
+        }
+
+        Map<String, Path> files = new HashMap<>();
+        for (int i = 2; i < args.length; i++)
+        {
+            int eq = args[i].indexOf('=');
+            files.put(args[i].substring(0, eq), Paths.get(args[i].substring(eq + 1)));
+        }
+
+        try
+        {
+            Expression e = new Parser().compile(args[0]);
+            String[] names = e.variables();
+            Path[] inputs = new Path[names.length];
+            for (int i = 0; i < names.length; i++)
+            {
+                inputs[i] = files.get(names[i]);
+                if (inputs[i] == null)
+                    throw new IllegalArgumentException("No column file for " + names[i]);
+            }
+
+            long t0 = System.nanoTime();
+            long rows = new SegmentEvaluator(e).evaluate(inputs, Paths.get(args[1]));
+            double secs = (System.nanoTime() - t0) / 1e9;
+
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            System.out.printf("%d rows, %.3f s, %.1f M rows/s, heap used %d KB of %d KB%n",
+                    rows, secs, rows / secs / 1e6, heap.getUsed() / 1024, heap.getMax() / 1024);
+        }
+        catch (ParserException exc)
+        {
+            System.out.println(exc);
+        }
+    }
+
+    // 힙에 배열을 만들지 않고 매핑한 파일에 바로 쓴다.
+    static void generate(long rows, Path file) throws IOException
+    {
+        Random rnd = new Random(42);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            MemorySegment column = ch.map(FileChannel.MapMode.READ_WRITE, 0, rows * SegmentEvaluator.LAYOUT.byteSize(), arena);
+            for (long i = 0; i < rows; i++)
+                column.setAtIndex(SegmentEvaluator.LAYOUT, i, 0.5 + rnd.nextDouble() * 8.0);
+            column.force();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+    이 모듈은 컴파일된 표현식을 힙 밖의 메모리(MemorySegment)에 있는 열에 대해 계산한다.
+    입력 열과 결과 열 모두 MemorySegment이며, FileChannel.map()으로 파일을 매핑한 세그먼트도 사용할 수 있다.
+    열 전체를 double[]로 옮기지 않고 CHUNK 행씩 잘라서 ColumnEvaluator로 계산하므로
+    열의 크기와 관계없이 힙은 (변수 개수 + 1) * CHUNK개의 double만 사용한다.
+    Foreign Function & Memory API를 사용하므로 Java 22 이상이 필요하다. (Java 21에서는 --enable-preview)
+ */
+import java.io.*;
+import java.lang.foreign.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+final class SegmentEvaluator
+{
+    // 열의 값 형식. 파일로 주고받을 수 있도록 바이트 순서를 정해 둔다.
+    // 세그먼트가 8바이트 단위로 정렬되어 있지 않아도 읽을 수 있도록 UNALIGNED를 사용한다.
+    static final ValueLayout.OfDouble LAYOUT = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // 한 번에 힙으로 옮겨서 계산하는 행 수 (열 하나에 512KB)
+    static final int CHUNK = 64 * ColumnEvaluator.BLOCK;
+
+    private final ColumnEvaluator evaluator;
+
+    SegmentEvaluator(Expression expression)
+    {
+        this(new ColumnEvaluator(expression));
+    }
+
+    SegmentEvaluator(ColumnEvaluator evaluator)
+    {
+        this.evaluator = evaluator;
+    }
+
+    // columns[i]는 i번째 변수(variables()[i])의 열이다. out의 크기만큼의 행을 계산해서 out에 넣는다.
+    // 어떤 행에서 0으로 나누면 ParserException을 발생시킨다. 이때 out에는 앞부분의 결과만 들어 있다.
+    public void evaluate(MemorySegment[] columns, MemorySegment out) throws ParserException
+    {
+        String[] names = evaluator.expression().variables();
+        if (columns.length < names.length)
+            throw new IllegalArgumentException("Expected " + names.length + " columns");
+        if (out.byteSize() % LAYOUT.byteSize() != 0)
+            throw new IllegalArgumentException("Output size " + out.byteSize() + " is not a multiple of " + LAYOUT.byteSize());
+        long rows = out.byteSize() / LAYOUT.byteSize();
+        for (int i = 0; i < names.length; i++)
+            if (columns[i].byteSize() < rows * LAYOUT.byteSize())
+                throw new IllegalArgumentException("Column " + names[i] + " is shorter than " + rows + " rows");
+
+        int size = (int) Math.min(CHUNK, rows);
+        double[][] chunk = new double[names.length][size];
+        double[] result = new double[size];
+
+        for (long start = 0; start < rows; start += CHUNK)
+        {
+            int n = (int) Math.min(CHUNK, rows - start);
+            long offset = start * LAYOUT.byteSize();
+            for (int i = 0; i < names.length; i++)
+                MemorySegment.copy(columns[i], LAYOUT, offset, chunk[i], 0, n);
+            evaluator.evaluate(chunk, result, 0, n);
+            MemorySegment.copy(result, 0, out, LAYOUT, offset, n);
+        }
+    }
+
+    // 변수마다 열 파일(LAYOUT 형식의 double이 이어진 파일)을 매핑해서 계산하고, 결과를 output 파일에 쓴다.
+    // 행 수는 가장 짧은 입력 파일에 맞춘다. 계산한 행 수를 반환한다.
+    public long evaluate(Path[] inputs, Path output) throws IOException, ParserException
+    {
+        String[] names = evaluator.expression().variables();
+        if (inputs.length < names.length)
+            throw new IllegalArgumentException("Expected " + names.length + " column files");
+
+        // 매핑은 Arena를 닫을 때 한꺼번에 해제된다.
+        try (Arena arena = Arena.ofConfined())
+        {
+            MemorySegment[] columns = new MemorySegment[names.length];
+            long rows = names.length == 0 ? 0 : Long.MAX_VALUE;
+            for (int i = 0; i < names.length; i++)
+            {
+                try (FileChannel ch = FileChannel.open(inputs[i], StandardOpenOption.READ))
+                {
+                    columns[i] = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+                }
+                rows = Math.min(rows, columns[i].byteSize() / LAYOUT.byteSize());
+            }
+
+            MemorySegment out;
+            try (FileChannel ch = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                out = ch.map(FileChannel.MapMode.READ_WRITE, 0, rows * LAYOUT.byteSize(), arena);
+            }
+            evaluate(columns, out);
+            out.force();
+            return rows;
+        }
+    }
+}
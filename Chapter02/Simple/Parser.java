@@ -8,8 +8,10 @@ class ParserException extends Exception {
 
     /**
      * 생성자
+     * - 에러는 잘못 입력한 식에서 흔히 나므로 스택 추적을 만들지 않는다.
      */
     public ParserException(String str) {
+        super(str, null, false, false);
         errStr = str;
     }
 
@@ -34,34 +36,31 @@ class Parser {
     final int NOEXP = 2;
     final int DIVBYZERO = 3;
 
-    // 표현식의 끝을 나타내는 상수
-    final String EOE = "\0";
-
-    private String exp;   // 표현(expression)을 담고 있는 문자열
-    private int expIdx;   // 표현(expression)의 현재 인덱스
-    private String token; // 현재 인덱싱 된 토큰
-    private int tokType;  // 현재 인덱싱 된 토큰의 타입
+    /**
+     * 토큰 분석기(../Lexer.java)
+     * - 토큰을 문자열로 만들지 않고 현재 토큰의 타입(type), 연산자 문자(op), 위치(start, end)만 기록
+     * - lex.type == NONE이면 표현식의 끝(EOE; End Of Expression)
+     */
+    private final Lexer lex = new Lexer(false);
 
     // 파서의 시작점
     public double evaluate(String expstr) throws ParserException {
         double result;
-        exp = expstr;
-        expIdx = 0;
+        lex.reset(expstr);
 
         /**
          * getToken();
          * 토큰값을 가져옴
          * 
-         * if (token.equals(EOE))
-         * - equals() 메소드는 두 객체가 같은 값을 가지고 있는지 비교
-         * - getToken()으로 가져온 토큰값(token)이 표현식의 끝(EOE; End Of Expression)이면
+         * if (lex.type == NONE)
+         * - getToken()으로 가져온 토큰의 타입이 표현식의 끝(EOE; End Of Expression)이면
          * 
          * handleErr(NOEXP);
          * NOEXP의 값을 2로 정의(상수)했으므로 
          * handleErr() 메소드의 err 문자열 배열의 인덱스 2에 해당하는 "No Expression Present" 출력
          */
         getToken();
-        if (token.equals(EOE))
+        if (lex.type == NONE)
             handleErr(NOEXP); // 표현이 존재하지 않음
 
         /**
@@ -70,7 +69,7 @@ class Parser {
         // 표현을 파싱하고 값을 구한다.
         result = evalExp2();
 
-        if (!token.equals(EOE)) // 문자열의 마지막은 EOE이어야 한다.
+        if (lex.type != NONE) // 문자열의 마지막은 EOE이어야 한다.
             handleErr(SYNTAX);
 
         return result;
@@ -94,8 +93,8 @@ class Parser {
         result = evalExp3();
 
         /**
-         * while ((op = token.charAt(0)) == '+' || op == '-')
-         * token.charAt(0)은 토큰의 첫 번째 문자가 '+' 또는 '-'이면 반복
+         * while ((op = lex.op) == '+' || op == '-')
+         * lex.op는 현재 토큰이 연산자일 때 그 문자이므로, '+' 또는 '-'이면 반복
          * 
          * getToken();
          * 연산자 다음의 숫자를 읽기 위해 다음 토큰 가져옴
@@ -108,7 +107,7 @@ class Parser {
          * return result;
          * 계산된 값 반환
          */
-        while ((op = token.charAt(0)) == '+' || op == '-') {
+        while ((op = lex.op) == '+' || op == '-') {
             getToken();
             partialResult = evalExp3();
             switch (op) {
@@ -131,7 +130,7 @@ class Parser {
 
         result = evalExp4();
 
-        while ((op = token.charAt(0)) == '*' || op == '/' || op == '%') {
+        while ((op = lex.op) == '*' || op == '/' || op == '%') {
             getToken();
             partialResult = evalExp4();
             switch (op) {
@@ -162,7 +161,7 @@ class Parser {
 
         result = evalExp5();
 
-        if (token.equals("^")) {
+        if (lex.op == '^') {
             getToken();
             partialResult = evalExp4();
             ex = result;
@@ -178,16 +177,16 @@ class Parser {
     // 단항의 +, -를 처리한다.
     private double evalExp5() throws ParserException {
         double result;
-        String op;
+        char op;
 
-        op = "";
-        if ((tokType == DELIMITER) && token.equals("+") || token.equals("-")) {
-            op = token;
+        op = '\0';
+        if (lex.op == '+' || lex.op == '-') {
+            op = lex.op;
             getToken();
         }
         result = evalExp6();
 
-        if (op.equals("-"))
+        if (op == '-')
             result = -result;
 
         return result;
@@ -197,10 +196,10 @@ class Parser {
     private double evalExp6() throws ParserException {
         double result;
 
-        if (token.equals("(")) {
+        if (lex.op == '(') {
             getToken();
             result = evalExp2();
-            if (!token.equals(")"))
+            if (lex.op != ')')
                 handleErr(UNBALPARENS);
             getToken();
         } else
@@ -213,10 +212,10 @@ class Parser {
     private double atom() throws ParserException {
         double result = 0.0;
 
-        switch (tokType) {
+        switch (lex.type) {
             case NUMBER:
                 try {
-                    result = Double.parseDouble(token);
+                    result = lex.number();
                 } catch (NumberFormatException exc) {
                     handleErr(SYNTAX);
                 }
@@ -229,150 +228,22 @@ class Parser {
         return result;
     }
 
+    // 에러 메시지 (에러 종류 상수값의 순서)
+    private static final String[] ERRORS = { "Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero" };
+
     // 에러를 처리한다.
     private void handleErr(int error) throws ParserException {
-        String[] err = { "Syntax Error", "Unbalanced Parentheses", "No Expression Present", "Division by Zero" };
-
-        throw new ParserException(err[error]);
+        throw new ParserException(ERRORS[error]);
     }
 
     // 토큰값을 가져온다.
     private void getToken() {
         /**
-         * 토큰값을 초기화한다.
+         * lex.next();
+         * 다음 토큰으로 이동
+         * - 공백을 넘어간 뒤 연산자, 변수형, 숫자형을 구분해 타입과 위치만 기록
+         * - 문자마다 새 문자열을 만들지 않으므로 토큰을 읽을 때 메모리 할당이 없음
          */
-        tokType = NONE;
-        token = "";
-
-        /**
-         * expIdx == exp.length()
-         * 현재 표현식의 인덱스(expIdx)가 표현식의 범위위(exp.length())와 같으면 
-         * 
-         * token = EOE;
-         * return;
-         * 토큰을 파일의 끝(EOE; End Of Expression)으로 설정 후, getToken() 메소드 종료
-         * 
-         */
-        // 표현의 끝인지 여부를 확인한다.
-        if(expIdx == exp.length()) {
-            token = EOE;
-            return;
-        }
-
-        /**
-         * expIdx < exp.length()
-         * 현재 표현식의 인덱스(expIdx)가 표현식의 범위위(exp.length()) 안에 있고,
-         * Character.isWhiteSpace(exp.charAt(expIdx))
-         * - Caracter 클래스의 isWhiteSpace() 메소드는 ' '(스페이스), '\t'(탭), \n'(줄바꿈), '\r'(캐리지 리턴), 기타 공백 문자(유니코드 공백 포함)을 공백으로 인식
-         * - exp.charAt(expIdx)는 현재 표현식의 인덱스(expIdx)번째의 문자
-         * 
-         * ++expIdx;
-         * 다음 표현식의 인덱스로 이동동
-         */
-        // 공백을 넘어간다.
-        while(expIdx < exp.length() && Character.isWhitespace(exp.charAt(expIdx)))
-            ++expIdx;
-
-        // 표현의 마지막인지 확인한다.
-        if(expIdx == exp.length()) {
-            token = EOE;
-            return;
-        }
-
-        /**
-         * isDelim(exp.charAt(expIdx))
-         * 현재 표현식의 인덱스의 문자가 연산자면
-         * 
-         * token += exp.charAt(expIdx);
-         * 토큰에 현재 표현식 인덱스의 문자 추가
-         * 
-         * expIdx++;
-         * 다음 문자로 이동
-         * 
-         * tokType = DELIMITER;
-         * 현재 토큰은 연산자 타입으로 설정
-         */
-        if(isDelim(exp.charAt(expIdx))) { // 연산자형
-            token += exp.charAt(expIdx);
-            expIdx++;
-            tokType = DELIMITER;
-        }
-        /**
-         * Character.isLetter(exp.charAt(expIdx))
-         * - Character 클래스의 isLetter() 메소드는 해당 문자가 문자(알파벳, 한글 등)인지 확인하는 역할
-         * - 문자면 true, 문자가 아니면 false 반환환
-         * - 현재 표현식 인덱스의 문자가 문자(알파벳, 한글 등)이면
-         * 
-         * while(!isDelim(exp.charAt(expIdx)))
-         * - 현재 표현식 인덱스의 문자가 구분자가 아닐 때까지 반복
-         * - 구분자가 등장하면 while 구문 종료 -> 변수명이 문자열이어도 처리됨
-         * 
-         * token += exp.charAt(expIdx);
-         * - 토큰에 현재 표현식 인덱스의 문자 추가
-         * 
-         * expIdx++;
-         * 다음 문자로 이동
-         * 
-         * if(expIdx >= exp.length())
-         * 현재 표현식 인덱스가 표현식 범위를 벗어나면 종료
-         * 
-         * tokType = VARIABLE;
-         * 토큰 타입을 변수(VARIABLE)로 설정
-         */
-        else if(Character.isLetter(exp.charAt(expIdx))) { // 변수형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if(expIdx >= exp.length())
-                    break;
-            }
-            tokType = VARIABLE;
-        }
-        /**
-         * Character.isDigit(exp.charAt(expIdx))
-         * - Character 클래스의 isDigit() 메소드는 해당 문자가 숫자(0-9)인지 확인하는 역할
-         * - 숫자면 true, 숫자가 아니면 false 반환
-         * - 현재 표현식 인덱스의 문자가 숫자이면
-         * 
-         * while(!isDelim(exp.charAt(expIdx)))
-         * 위 분기문 중 변수형과 과정 동일
-         * 
-         * tokType = NUMBER;
-         * 토큰 타입을 숫자(NUMBER)로 설정
-         */
-        else if(Character.isDigit(exp.charAt(expIdx))) { // 숫자형
-            while(!isDelim(exp.charAt(expIdx))) {
-                token += exp.charAt(expIdx);
-                expIdx++;
-                if (expIdx >= exp.length())
-                    break;
-            }
-            tokType = NUMBER;
-        }
-        /**
-         * 연산자형, 변수형, 숫자형이 아닌 표현식이면
-         * 
-         * token = EOE;
-         * 토큰을 표현식의 끝(EOE; End Of Expression)으로 간주하고 getToken() 메소드 종료
-         */
-        else // 기타 정의되지 않은 형이라면 표현식이 종료된 것으로 간주한다.
-        {
-            token = EOE;
-            return;
-        }
-    }
-
-    /**
-     * 주어진 문자 c가 연산자(구분 문자(Delimiter))인지 확인하는 역할
-     * 
-     * " +-/*^=()".indexOf(c) != -1
-     * - indexOf() 메소드는 문자열에서 인수에 해당하는 위치를 반환
-     * - 해당 연산자가 있으면 true, 없으면 false를 반환
-     */
-    // true가 리턴되면 c는 연산자(일반 연산자, 괄호, 스페이스) 문자이다.
-    private boolean isDelim(char c) {
-        if((" +-/*^=()".indexOf(c) != -1))
-            return true;
-        return false;
+        lex.next();
     }
 }
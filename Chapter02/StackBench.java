@@ -0,0 +1,77 @@
+// Parser와 StackParser의 계산 속도 비교와 깊게 중첩된 식 계산
+// java StackBench [반복 횟수] [중첩 깊이]
+class StackBench
+{
+    static final int BLOCKS = 10;
+
+    public static void main(String[] args) throws ParserException
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        Parser p = new Parser();
+        Parser s = new StackParser();
+
+        for (String f : CompileBench.SUBSTITUTED)
+            if (Double.compare(p.evaluate(f), s.evaluate(f)) != 0)
+                throw new IllegalStateException("Mismatch: " + f);
+
+        // JIT 컴파일이 끝나도록 먼저 한 번씩 돌린다.
+        CompileBench.runEvaluate(p, rounds);
+        CompileBench.runEvaluate(s, rounds);
+
+        // 두 파서를 번갈아 BLOCKS번씩 나눠 재고 각자 가장 빠른 구간을 쓴다.
+        // 한쪽을 다 잰 뒤 다른 쪽을 재면 먼저 재는 쪽과 나중 재는 쪽의 JIT, GC 상태가 달라서 차이가 커진다.
+        int block = Math.max(1, rounds / BLOCKS);
+        long best1 = Long.MAX_VALUE, best2 = Long.MAX_VALUE;
+        double s1 = 0.0, s2 = 0.0;
+        for (int b = 0; b < BLOCKS; b++)
+        {
+            boolean parserFirst = b % 2 == 0;
+            long t0 = System.nanoTime();
+            double first = CompileBench.runEvaluate(parserFirst ? p : s, block);
+            long t1 = System.nanoTime();
+            double second = CompileBench.runEvaluate(parserFirst ? s : p, block);
+            long t2 = System.nanoTime();
+            best1 = Math.min(best1, parserFirst ? t1 - t0 : t2 - t1);
+            best2 = Math.min(best2, parserFirst ? t2 - t1 : t1 - t0);
+            s1 = parserFirst ? first : second;
+            s2 = parserFirst ? second : first;
+        }
+
+        long calls = (long) block * CompileBench.FORMULAS.length;
+        System.out.printf("Parser      : %8.1f ns/op (checksum %s)%n", best1 / (double) calls, s1);
+        System.out.printf("StackParser : %8.1f ns/op (checksum %s)%n", best2 / (double) calls, s2);
+
+        // (1 + (1 + (... + 1))) 꼴로 depth 단계 중첩된 식
+        String deep = nested(depth);
+        System.out.printf("depth %d, Parser      : %s%n", depth, tryEvaluate(p, deep));
+        System.out.printf("depth %d, StackParser : %s%n", depth, tryEvaluate(s, deep));
+    }
+
+    static String nested(int depth)
+    {
+        StringBuilder sb = new StringBuilder(depth * 5 + 1);
+        for (int i = 0; i < depth; i++)
+            sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < depth; i++)
+            sb.append(')');
+        return sb.toString();
+    }
+
+    static String tryEvaluate(Parser p, String exp)
+    {
+        try
+        {
+            return String.valueOf(p.evaluate(exp));
+        }
+        catch (ParserException exc)
+        {
+            return exc.toString();
+        }
+        catch (StackOverflowError err)
+        {
+            return "StackOverflowError";
+        }
+    }
+}
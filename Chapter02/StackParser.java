@@ -0,0 +1,342 @@
+/*
+    이 모듈은 재귀 호출 대신 명시적인 스택으로 계산하는 파서를 포함한다.
+    Parser는 괄호 한 단계마다 evalCond부터 evalExp6까지 여러 번 재귀 호출하므로 수천 단계로 중첩된 식에서는
+    스레드 스택이 넘친다(StackOverflowError). StackParser는 피연산자와 연산자를 힙의 배열 스택에 쌓는
+    연산자 우선순위 방식(shunting-yard)으로 한 번의 반복문에서 계산하므로 중첩 깊이에 제한이 없다.
+    연산을 적용하는 순서가 Parser와 같으므로 결과와 에러(종류, 위치, 먼저 나는 에러)도 Parser와 같다.
+    &&, ||, ?:의 계산하지 않는 쪽은 Parser와 같이 문법만 검사한다. (live가 false인 동안)
+    숫자와 리듀스 연산은 Parser.atom()으로 읽는다. (리듀스 연산의 인수 안쪽은 재귀적으로 컴파일된다.)
+ */
+import java.util.*;
+
+class StackParser extends Parser
+{
+    // 연산자 스택의 표시들. 이항 연산자는 Lexer의 op 문자를 그대로 쌓는다.
+    private static final char NEG = '~';  // 괄호 앞의 단항 -
+    private static final char NOT = '!';  // 괄호 앞의 단항 !
+    private static final char THEN = '?'; // 조건 뒤. 값 스택에 조건 값이 있다.
+    private static final char ELSE = ':'; // 참일 때의 식 뒤. 값 스택에 조건 값과 참일 때의 값이 있다.
+    private static final char BOTTOM = '\0'; // 스택의 맨 아래. 비었는지 따로 검사하지 않아도 된다.
+
+    // 스레드마다 재사용하는 Lexer와 스택. 짧은 식에서 호출마다 객체와 배열을 만드는 비용이 계산보다 크다.
+    // (StackParser도 여러 스레드가 하나의 객체를 함께 사용할 수 있다.)
+    private static final ThreadLocal<Stacks> STACKS = ThreadLocal.withInitial(Stacks::new);
+
+    // 파서의 시작점
+    @Override
+    public double evaluate(CharSequence expstr) throws ParserException
+    {
+        Stacks s = STACKS.get();
+        try
+        {
+            s.lex.reset(expstr);
+            return evaluate(s.lex, s);
+        }
+        finally
+        {
+            s.clear();
+        }
+    }
+
+    private double evaluate(Lexer lex, Stacks s) throws ParserException
+    {
+        lex.next();
+        if (lex.atEnd())
+            handleErr(NOEXP, lex.tokStart); // 표현이 존재하지 않음
+
+        boolean live = true; // 계산하는 쪽인지 여부 (Parser의 live와 같다.)
+
+        for (;;)
+        {
+            // 피연산자를 읽는다. 단항의 +, -, !는 바로 뒤의 괄호나 숫자에만 적용된다.
+            char sign = '\0';
+            if (lex.op == '+' || lex.op == '-' || lex.op == '!')
+            {
+                sign = lex.op;
+                lex.next();
+            }
+            if (lex.op == '(')
+            {
+                if (sign == '-')
+                    s.push(NEG, 0, live);
+                else if (sign == '!')
+                    s.push(NOT, 0, live);
+                s.push('(', 0, live);
+                lex.next();
+                continue;
+            }
+
+            // v는 지금의 값이다. 값 스택에는 넣지 않고, 연산자를 쌓을 때 그 왼쪽 값으로 넣는다.
+            double v = atom(lex, live);
+            if (sign == '-')
+                v = -v;
+            else if (sign == '!')
+                v = Node.truth(v) ? 0.0 : 1.0;
+
+            // 연산자를 읽는다. 닫는 괄호는 여러 개가 이어질 수 있다.
+            for (;;)
+            {
+                char op = binary(lex);
+                int prec = precedence(op);
+                if (prec > 0)
+                {
+                    // ^는 오른쪽 결합이므로 앞의 ^를 먼저 계산하지 않는다.
+                    if (op != '^')
+                        while (precedence(s.top()) >= prec)
+                        {
+                            live = s.topLive();
+                            v = apply(s, v);
+                        }
+
+                    // 왼쪽 값으로 오른쪽을 계산할지 정한다.
+                    boolean right = live;
+                    if (op == Lexer.AND)
+                        right = live && Node.truth(v);
+                    else if (op == Lexer.OR)
+                        right = live && !Node.truth(v);
+                    s.pushValue(v);
+                    s.push(op, lex.tokStart, live);
+                    live = right;
+                    lex.next();
+                    break;
+                }
+
+                if (op == '?')
+                {
+                    while (precedence(s.top()) > 0)
+                    {
+                        live = s.topLive();
+                        v = apply(s, v);
+                    }
+                    boolean test = Node.truth(v);
+                    s.pushValue(v);
+                    s.push(THEN, lex.tokStart, live);
+                    live = live && test;
+                    lex.next();
+                    break;
+                }
+
+                if (op == ':' && s.hasThen())
+                {
+                    // 참일 때의 식을 끝내고 거짓일 때의 식을 읽는다.
+                    while (s.top() != THEN)
+                    {
+                        live = s.topLive();
+                        v = apply(s, v);
+                    }
+                    boolean outer = s.topLive();
+                    boolean test = Node.truth(s.value());
+                    s.pushValue(v);
+                    s.replaceTop(ELSE);
+                    live = outer && !test;
+                    lex.next();
+                    break;
+                }
+
+                // 식이 끝났으므로 가장 안쪽 괄호나 처음까지의 연산을 모두 계산한다.
+                while (s.top() != BOTTOM && s.top() != '(')
+                {
+                    if (s.top() == THEN) // ':'가 없는 조건 연산자
+                        handleErr(SYNTAX, lex.tokStart);
+                    live = s.topLive();
+                    v = apply(s, v);
+                }
+
+                if (s.top() == BOTTOM)
+                {
+                    if (!lex.atEnd()) // 문자열의 마지막은 EOE이어야 한다. 정의되지 않은 문자에서 멈춰도 에러이다.
+                        handleErr(SYNTAX, lex.tokStart);
+                    return v;
+                }
+
+                if (lex.op != ')')
+                    handleErr(UNBALPARENS, lex.tokStart);
+                lex.next();
+                s.ops--;
+                if (s.top() == NEG)
+                {
+                    s.ops--;
+                    v = -v;
+                }
+                else if (s.top() == NOT)
+                {
+                    s.ops--;
+                    v = Node.truth(v) ? 0.0 : 1.0;
+                }
+            }
+        }
+    }
+
+    // 피연산자 뒤의 현재 토큰을 연산자 문자로 바꾼다. and, or도 &&, ||로 바꾼다.
+    private static char binary(Lexer lex)
+    {
+        char logical = logical(lex);
+        return logical != '\0' ? logical : lex.op;
+    }
+
+    // 이항 연산자의 우선순위. 연산자가 아니면 0
+    private static int precedence(char op)
+    {
+        return op < PRECEDENCE.length ? PRECEDENCE[op] : 0;
+    }
+
+    // 연산자 문자별 우선순위 테이블. 연산자마다 여러 번 찾으므로 switch 대신 배열로 찾는다.
+    private static final byte[] PRECEDENCE = new byte[128];
+
+    static
+    {
+        PRECEDENCE[Lexer.OR] = 1;
+        PRECEDENCE[Lexer.AND] = 2;
+        for (char op : new char[] {'<', '>', Lexer.LE, Lexer.GE, Lexer.EQ, Lexer.NE})
+            PRECEDENCE[op] = 3;
+        PRECEDENCE['+'] = PRECEDENCE['-'] = 4;
+        PRECEDENCE['*'] = PRECEDENCE['/'] = PRECEDENCE['%'] = 5;
+        PRECEDENCE['^'] = 6;
+    }
+
+    // 스택 맨 위의 연산을 오른쪽 값 partialResult에 적용한 값을 반환한다. 왼쪽 값은 값 스택에서 꺼낸다.
+    // 0으로 나누기는 그 연산을 쌓을 때의 live로 판단한다. (산술 연산의 오른쪽은 왼쪽과 같은 live로 읽는다.)
+    // 자주 쓰는 산술 연산만 여기서 계산하고 나머지는 logic()에 두어 JIT에서 인라인될 만큼 작게 한다.
+    private double apply(Stacks s, double partialResult) throws ParserException
+    {
+        long entry = s.opStack[--s.ops];
+        char op = Stacks.op(entry);
+        if (op == ELSE || op < ' ')
+            return logic(s, entry, partialResult);
+
+        double result = s.vals[--s.nv];
+
+        switch (op)
+        {
+            case '+':
+                return result + partialResult;
+            case '-':
+                return result - partialResult;
+            case '*':
+                return result * partialResult;
+            case '/':
+                if (partialResult == 0.0 && Stacks.live(entry))
+                    handleErr(DIVBYZERO, Stacks.pos(entry));
+                return result / partialResult;
+            case '%':
+                if (partialResult == 0.0 && Stacks.live(entry))
+                    handleErr(DIVBYZERO, Stacks.pos(entry));
+                return result % partialResult;
+            case '^':
+                return Power.pow(result, partialResult);
+            default:
+                return Node.compare(comparison(op), result, partialResult);
+        }
+    }
+
+    // 조건 연산자와 논리 연산자(&&, ||), 두 글자 비교 연산자(<=, >=, ==, !=)를 적용한다.
+    private static double logic(Stacks s, long entry, double partialResult)
+    {
+        char op = Stacks.op(entry);
+        if (op == ELSE)
+        {
+            // partialResult는 거짓일 때의 값이다.
+            double then = s.vals[--s.nv];
+            return Node.truth(s.vals[--s.nv]) ? then : partialResult;
+        }
+
+        double result = s.vals[--s.nv];
+
+        switch (op)
+        {
+            case Lexer.AND:
+                return Node.truth(result) && Node.truth(partialResult) ? 1.0 : 0.0;
+            case Lexer.OR:
+                return Node.truth(result) || Node.truth(partialResult) ? 1.0 : 0.0;
+            default:
+                return Node.compare(comparison(op), result, partialResult);
+        }
+    }
+
+    // 값 스택과 연산자 스택. 연산자마다 위치(0으로 나누면 알린다)와 쌓을 때의 live를 함께 둔다.
+    // 연산자 스택의 항목은 long 하나에 연산자(아래 16비트), live(16번 비트), 위치(위 32비트)를 담는다.
+    // 쌓고 꺼낼 때 배열 하나만 읽고 쓰면 된다.
+    private static final class Stacks
+    {
+        // 이보다 커진 배열은 계산이 끝나면 버린다. 깊게 중첩된 식 하나 때문에 스레드마다 큰 배열이 남지 않게 한다.
+        static final int KEEP = 1024;
+
+        final Lexer lex = new Lexer(false, true);
+        double[] vals = new double[16];
+        int nv;
+        long[] opStack = new long[16]; // 0번 항목은 늘 BOTTOM이다.
+        int ops = 1;
+
+        // 다음 계산을 위해 비운다. 계산한 문자열도 놓아준다.
+        void clear()
+        {
+            lex.reset(null);
+            nv = 0;
+            ops = 1;
+            if (vals.length > KEEP)
+                vals = new double[16];
+            if (opStack.length > KEEP)
+                opStack = new long[16];
+        }
+
+        void pushValue(double v)
+        {
+            if (nv == vals.length)
+                vals = Arrays.copyOf(vals, nv * 2);
+            vals[nv++] = v;
+        }
+
+        void push(char op, int at, boolean isLive)
+        {
+            if (ops == opStack.length)
+                opStack = Arrays.copyOf(opStack, ops * 2);
+            opStack[ops++] = (long) at << 32 | (isLive ? 1L << 16 : 0L) | op;
+        }
+
+        // 맨 위 연산자를 쌓을 때의 live
+        boolean topLive()
+        {
+            return live(opStack[ops - 1]);
+        }
+
+        // 맨 위 항목의 연산자만 바꾼다.
+        void replaceTop(char op)
+        {
+            opStack[ops - 1] = opStack[ops - 1] & ~0xFFFFL | op;
+        }
+
+        static char op(long entry)
+        {
+            return (char) entry;
+        }
+
+        static int pos(long entry)
+        {
+            return (int) (entry >>> 32);
+        }
+
+        static boolean live(long entry)
+        {
+            return (entry & 1L << 16) != 0;
+        }
+
+        char top()
+        {
+            return op(opStack[ops - 1]);
+        }
+
+        double value()
+        {
+            return vals[nv - 1];
+        }
+
+        // 가장 안쪽 괄호 안에 ':'를 기다리는 조건 연산자가 있는지 확인한다.
+        boolean hasThen()
+        {
+            for (int i = ops - 1; i > 0 && op(opStack[i]) != '('; i--)
+                if (op(opStack[i]) == THEN)
+                    return true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// 여러 스레드가 하나의 Parser 객체를 함께 사용할 때의 처리량 측정
+import java.util.*;
+import java.util.concurrent.*;
+
+class ThreadBench
+{
+    public static void main(String[] args) throws Exception
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        Parser p = new Parser(); // 모든 스레드가 같은 객체를 사용한다.
+
+        // 결과가 한 스레드에서 계산한 값과 같은지 먼저 확인한다.
+        double[] expected = new double[CompileBench.SUBSTITUTED.length];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = p.evaluate(CompileBench.SUBSTITUTED[i]);
+
+        run(p, expected, maxThreads, millis / 2); // JIT 컴파일을 위해 먼저 한 번 돌린다.
+
+        double base = 0.0;
+        System.out.println("threads      ops/s    per-thread  scaling");
+        // 1, 2, 4, ... 개의 스레드와 최대 스레드 수로 측정한다.
+        TreeSet<Integer> counts = new TreeSet<>();
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+            counts.add(threads);
+        counts.add(maxThreads);
+
+        for (int threads : counts)
+        {
+            double opsPerSec = run(p, expected, threads, millis);
+            if (threads == 1)
+                base = opsPerSec;
+            System.out.printf("%7d %11.0f %12.0f %7.2fx%n", threads, opsPerSec, opsPerSec / threads, opsPerSec / base);
+        }
+    }
+
+    // 주어진 스레드 수로 millis 동안 계산한 뒤 초당 계산 횟수를 반환한다.
+    static double run(Parser p, double[] expected, int threads, long millis) throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        long deadline[] = new long[1];
+
+        for (int t = 0; t < threads; t++)
+        {
+            results.add(pool.submit(() -> {
+                long ops = 0;
+                start.await();
+                while (System.nanoTime() < deadline[0])
+                {
+                    for (int i = 0; i < expected.length; i++)
+                    {
+                        if (p.evaluate(CompileBench.SUBSTITUTED[i]) != expected[i])
+                            throw new IllegalStateException("Mismatch: " + CompileBench.SUBSTITUTED[i]);
+                    }
+                    ops += expected.length;
+                }
+                return ops;
+            }));
+        }
+
+        long t0 = System.nanoTime();
+        deadline[0] = t0 + millis * 1_000_000L;
+        start.countDown();
+
+        long total = 0;
+        for (Future<Long> f : results)
+            total += f.get();
+        long t1 = System.nanoTime();
+        pool.shutdown();
+
+        return total * 1e9 / (t1 - t0);
+    }
+}
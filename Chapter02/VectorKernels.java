@@ -0,0 +1,86 @@
+/*
+    이 모듈은 ColumnEvaluator가 사용하는 열 단위 연산을 Vector API(jdk.incubator.vector)로 구현한다.
+    컴파일과 실행 모두 --add-modules jdk.incubator.vector가 필요하다. 모듈이 없으면 ColumnKernels.best()가
+    이 클래스를 읽지 않고 일반 반복문을 사용한다.
+    덧셈, 뺄셈, 곱셈, 나눗셈은 IEEE 754 연산이므로 결과가 일반 반복문과 비트 단위로 같다.
+    나머지와 지수는 대응하는 벡터 연산이 없으므로 ColumnKernels의 기본 구현을 그대로 사용한다.
+ */
+import jdk.incubator.vector.*;
+
+final class VectorKernels implements ColumnKernels
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            x.add(y).intoArray(d, dOff + i);
+        }
+        for (; i < n; i++)
+            d[dOff + i] = a[aOff + i] + b[bOff + i];
+    }
+
+    @Override
+    public void sub(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            x.sub(y).intoArray(d, dOff + i);
+        }
+        for (; i < n; i++)
+            d[dOff + i] = a[aOff + i] - b[bOff + i];
+    }
+
+    @Override
+    public void mul(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            x.mul(y).intoArray(d, dOff + i);
+        }
+        for (; i < n; i++)
+            d[dOff + i] = a[aOff + i] * b[bOff + i];
+    }
+
+    // 나누는 수가 0인 원소가 있는지 나누면서 함께 확인한다.
+    @Override
+    public boolean div(double[] a, int aOff, double[] b, int bOff, double[] d, int dOff, int n)
+    {
+        boolean zero = false;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOff + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOff + i);
+            zero |= y.eq(0.0).anyTrue();
+            x.div(y).intoArray(d, dOff + i);
+        }
+        for (; i < n; i++)
+        {
+            zero |= b[bOff + i] == 0.0;
+            d[dOff + i] = a[aOff + i] / b[bOff + i];
+        }
+        return !zero;
+    }
+
+    @Override
+    public void neg(double[] a, int aOff, double[] d, int dOff, int n)
+    {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, a, aOff + i).neg().intoArray(d, dOff + i);
+        for (; i < n; i++)
+            d[dOff + i] = -a[aOff + i];
+    }
+}
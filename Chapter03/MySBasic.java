@@ -700,20 +700,13 @@ class SBasic {
     private double evalExp4() throws InterpreterException {
         double result;
         double partialResult;
-        double ex;
-        int t;
 
         result = evalExp5();
 
         if (token.equals("^")) {
             getToken();
             partialResult = evalExp4();
-            ex = result;
-            if (partialResult == 0.0) {
-                result = 1.0;
-            } else
-                for (t = (int) partialResult; t > 0; t--)
-                    result = result * ex;
+            result = Power.pow(result, partialResult); // ../Chapter02/Power.java
         }
         return result;
     }
@@ -758,7 +751,7 @@ class SBasic {
         switch (tokType) {
             case NUMBER:
                 try {
-                    result = Double.parseDouble(token);
+                    result = NumberParser.parse(token, 0, token.length()); // ../Chapter02/NumberParser.java
                 } catch (NumberFormatException exc) {
                     handleErr(SYNTAX);
                 }
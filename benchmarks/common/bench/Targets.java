@@ -0,0 +1,97 @@
+package bench;
+
+import java.lang.invoke.*;
+
+/*
+    예제 클래스들은 기본 패키지에 있고 public이 아니므로 bench 패키지에서 직접 참조할 수 없다.
+    (JMH는 기본 패키지의 벤치마크를 허용하지 않는다.)
+    같은 이름 없는 모듈에 있으므로 privateLookupIn()으로 메소드 핸들을 얻어서 호출한다.
+    핸들은 static final 필드에 두어야 JIT가 직접 호출처럼 인라인할 수 있다.
+ */
+final class Targets
+{
+    private Targets()
+    {
+    }
+
+    // 기본 패키지의 클래스를 찾는다.
+    static Class<?> type(String name)
+    {
+        try
+        {
+            return Class.forName(name, true, Targets.class.getClassLoader());
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalStateException(name + " is not on the class path", e);
+        }
+    }
+
+    // 생성자 핸들
+    static MethodHandle constructor(String owner, Class<?>... params)
+    {
+        try
+        {
+            Class<?> c = type(owner);
+            MethodHandle h = lookup(c).findConstructor(c, MethodType.methodType(void.class, params));
+            return h.asType(erase(h.type()));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 인스턴스 메소드 핸들. 첫 번째 인수가 수신 객체이다.
+    static MethodHandle virtual(String owner, String name, Class<?> ret, Class<?>... params)
+    {
+        try
+        {
+            Class<?> c = type(owner);
+            MethodHandle h = lookup(c).findVirtual(c, name, MethodType.methodType(ret, params));
+            return h.asType(erase(h.type()));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // static 메소드 핸들
+    static MethodHandle statik(String owner, String name, Class<?> ret, Class<?>... params)
+    {
+        try
+        {
+            Class<?> c = type(owner);
+            MethodHandle h = lookup(c).findStatic(c, name, MethodType.methodType(ret, params));
+            return h.asType(erase(h.type()));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 기본 패키지 타입을 bench 패키지에서 쓸 수 있도록 배열이 아닌 참조 타입을 Object로 바꾼다.
+    private static MethodType erase(MethodType t)
+    {
+        for (int i = 0; i < t.parameterCount(); i++)
+        {
+            if (isHidden(t.parameterType(i)))
+                t = t.changeParameterType(i, Object.class);
+        }
+        if (isHidden(t.returnType()))
+            t = t.changeReturnType(Object.class);
+        return t;
+    }
+
+    private static boolean isHidden(Class<?> c)
+    {
+        return !c.isPrimitive() && !c.isArray() && c.getPackageName().isEmpty();
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> c) throws IllegalAccessException
+    {
+        return MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    한 표현식을 많은 행에 대해 계산하는 벤치마크.
+    행마다 컴파일된 Expression이나 바이트코드로 계산하는 경우와
+    ColumnEvaluator로 열 단위로 계산하는 경우(일반 반복문, Vector API)를 비교한다. 결과는 한 번 호출(모든 행)의 시간이다.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class ColumnBenchmark
+{
+    static final MethodHandle NEW_PARSER = Targets.constructor("Parser");
+    static final MethodHandle COMPILE = Targets.virtual("Parser", "compile", Targets.type("Expression"), String.class);
+    static final MethodHandle VARIABLES = Targets.virtual("Expression", "variables", String[].class);
+    static final MethodHandle TO_BYTECODE = Targets.statik("BytecodeCompiler", "compile",
+            Targets.type("Formula"), Targets.type("Expression"));
+    static final MethodHandle FORMULA = Targets.virtual("Formula", "evaluate", double.class, double[].class);
+    static final MethodHandle NEW_COLUMNS = Targets.constructor("ColumnEvaluator",
+            Targets.type("Expression"), Targets.type("ColumnKernels"));
+    static final MethodHandle COLUMNS = Targets.virtual("ColumnEvaluator", "evaluate", void.class, double[][].class, double[].class);
+    static final MethodHandle BEST = Targets.statik("ColumnKernels", "best", Targets.type("ColumnKernels"));
+    static final MethodHandle IS_VECTORIZED = Targets.virtual("ColumnEvaluator", "isVectorized", boolean.class);
+
+    @Param({ "short", "long", "nested" })
+    String workload;
+
+    @Param({ "1000", "1000000" })
+    int rows;
+
+    Object compiled;
+    Object generated;
+    Object scalar;
+    Object vector;
+    double[][] columns;
+    double[] out;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        String formula = ParserBenchmark.workload(workload);
+        Object parser = NEW_PARSER.invokeExact();
+        compiled = COMPILE.invokeExact(parser, formula);
+        generated = TO_BYTECODE.invokeExact(compiled);
+        Field field = Targets.type("ColumnKernels").getDeclaredField("SCALAR");
+        field.setAccessible(true);
+        Object scalarKernels = field.get(null);
+        scalar = NEW_COLUMNS.invokeExact(compiled, scalarKernels);
+        vector = NEW_COLUMNS.invokeExact(compiled, (Object) BEST.invokeExact());
+        if (!(boolean) IS_VECTORIZED.invokeExact(vector))
+            System.err.println("Vector API is not available; vector() measures scalar loops.");
+
+        // 0으로 나누지 않도록 0.5 이상의 값만 넣는다.
+        Random rnd = new Random(42);
+        columns = new double[((String[]) VARIABLES.invokeExact(compiled)).length][rows];
+        for (double[] column : columns)
+            for (int i = 0; i < rows; i++)
+                column[i] = 0.5 + rnd.nextDouble() * 8.0;
+        out = new double[rows];
+
+        // 열 단위 계산의 결과가 행마다 계산한 것과 같은지 먼저 확인한다.
+        double[] expected = compiled().clone();
+        if (!Arrays.equals(expected, columnScalar()) || !Arrays.equals(expected, columnVector()))
+            throw new IllegalStateException("Mismatch: " + formula);
+    }
+
+    // 행마다 변수 값 배열을 채워서 컴파일된 트리로 계산한다.
+    @Benchmark
+    public double[] compiled() throws Throwable
+    {
+        return perRow(compiled);
+    }
+
+    // 행마다 바이트코드로 만든 클래스로 계산한다.
+    @Benchmark
+    public double[] bytecode() throws Throwable
+    {
+        return perRow(generated);
+    }
+
+    // 열 단위로 일반 반복문으로 계산한다.
+    @Benchmark
+    public double[] columnScalar() throws Throwable
+    {
+        COLUMNS.invokeExact(scalar, columns, out);
+        return out;
+    }
+
+    // 열 단위로 Vector API로 계산한다.
+    @Benchmark
+    public double[] columnVector() throws Throwable
+    {
+        COLUMNS.invokeExact(vector, columns, out);
+        return out;
+    }
+
+    private double[] perRow(Object formula) throws Throwable
+    {
+        double[] vars = new double[columns.length];
+        for (int i = 0; i < rows; i++)
+        {
+            for (int v = 0; v < vars.length; v++)
+                vars[v] = columns[v][i];
+            out[i] = (double) FORMULA.invokeExact(formula, vars);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,136 @@
+package bench;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    Chapter02 Parser의 벤치마크.
+    같은 표현식을 evaluate(String), compile()된 Expression, BytecodeCompiler로 만든 Formula로 계산하고,
+    compile() 자체의 비용도 측정한다.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark
+{
+    static final MethodHandle NEW_PARSER = Targets.constructor("Parser");
+    static final MethodHandle EVALUATE = Targets.virtual("Parser", "evaluate", double.class, String.class);
+    static final MethodHandle COMPILE = Targets.virtual("Parser", "compile", Targets.type("Expression"), String.class);
+    static final MethodHandle VARIABLES = Targets.virtual("Expression", "variables", String[].class);
+    static final MethodHandle TO_BYTECODE = Targets.statik("BytecodeCompiler", "compile",
+            Targets.type("Formula"), Targets.type("Expression"));
+    static final MethodHandle FORMULA = Targets.virtual("Formula", "evaluate", double.class, double[].class);
+
+    // 변수 값. evaluate(String)에는 이 값을 문자열에 넣어서 넘긴다.
+    static final String NAMES = "abc";
+    static final double[] VALUES = { 1.5, 0.75, 7.0 };
+
+    // short: 짧은 식, long: 항이 많은 긴 식, nested: 괄호가 깊게 중첩된 식, branch: 조건 연산자로 한 조각만 계산하는 식
+    @Param({ "short", "long", "nested", "branch" })
+    String workload;
+
+    String formula;     // 변수가 있는 표현식
+    String substituted; // 변수 자리에 값을 넣은 표현식
+    Object parser;
+    Object compiled;
+    Object generated;
+    double[] vars;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        formula = workload(workload);
+        substituted = substitute(formula);
+        parser = NEW_PARSER.invokeExact();
+        compiled = COMPILE.invokeExact(parser, formula);
+        generated = TO_BYTECODE.invokeExact(compiled);
+
+        String[] names = (String[]) VARIABLES.invokeExact(compiled);
+        vars = new double[names.length];
+        for (int i = 0; i < names.length; i++)
+            vars[i] = VALUES[NAMES.indexOf(names[i].charAt(0))];
+
+        // 세 경로의 결과가 같은지 먼저 확인한다.
+        double expected = (double) EVALUATE.invokeExact(parser, substituted);
+        if ((double) FORMULA.invokeExact(compiled, vars) != expected
+                || (double) FORMULA.invokeExact(generated, vars) != expected)
+            throw new IllegalStateException("Mismatch: " + formula);
+    }
+
+    // 매번 문자열을 토큰 분석하고 파싱하면서 계산한다.
+    @Benchmark
+    public double evaluate() throws Throwable
+    {
+        return (double) EVALUATE.invokeExact(parser, substituted);
+    }
+
+    // 파싱과 최적화만 한다.
+    @Benchmark
+    public Object compile() throws Throwable
+    {
+        return COMPILE.invokeExact(parser, formula);
+    }
+
+    // 컴파일된 트리를 계산한다.
+    @Benchmark
+    public double compiled() throws Throwable
+    {
+        return (double) FORMULA.invokeExact(compiled, vars);
+    }
+
+    // 바이트코드로 만든 클래스로 계산한다.
+    @Benchmark
+    public double bytecode() throws Throwable
+    {
+        return (double) FORMULA.invokeExact(generated, vars);
+    }
+
+    static String workload(String name)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        switch (name)
+        {
+            case "short":
+                return "a + 20 * b";
+            case "long":
+                // 64개의 항
+                for (int i = 0; i < 64; i++)
+                {
+                    if (i > 0)
+                        sb.append(' ').append("+-*/".charAt(i % 4)).append(' ');
+                    sb.append(i % 3 == 0 ? String.valueOf(NAMES.charAt(i / 3 % NAMES.length())) : String.valueOf(1.25 + i));
+                }
+                return sb.toString();
+            case "nested":
+                // 깊이 100의 괄호
+                String inner = "a";
+                for (int i = 1; i <= 100; i++)
+                    inner = "(" + inner + (i % 2 == 0 ? " * b + " : " - c / ") + i + ")";
+                return inner;
+            case "branch":
+                // 네 조각 중 하나만 계산한다. (a = 1.5이므로 두 번째 조각)
+                return "a < 1 ? a * b + c / 3 : a < 2 && b != 0 ? (a - b) / c + a ^ 2 : c > 5 || b < 0 ? c * c - a * b : a ^ 3 - c";
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name);
+        }
+    }
+
+    static String substitute(String formula)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (char ch : formula.toCharArray())
+        {
+            int v = NAMES.indexOf(ch);
+            if (v == -1)
+                sb.append(ch);
+            else
+                sb.append(VALUES[v]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package bench;
+
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    Chapter03 SBasic의 벤치마크.
+    TEST*.BAS 예제와 반복문이 많은 계산 프로그램(ARITH, BRANCH, GOSUB)을 실행한다.
+    PRINT 출력은 버리고, INPUT에는 항상 5를 입력한다.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SBasicBenchmark
+{
+    static final MethodHandle NEW_SBASIC = Targets.constructor("SBasic", String.class);
+    static final MethodHandle RUN = Targets.virtual("SBasic", "run", void.class);
+
+    @Param({ "TEST", "TEST1", "TEST2", "TEST3", "TEST4", "TEST5", "ARITH", "BRANCH", "GOSUB" })
+    String program;
+
+    Path file;
+    Object interpreter;
+    PrintStream savedOut;
+    InputStream savedIn;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        file = copyProgram(program);
+
+        savedOut = System.out;
+        savedIn = System.in;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setIn(new AnswerStream("5\n"));
+
+        interpreter = NEW_SBASIC.invokeExact(file.toString());
+        RUN.invokeExact(interpreter); // 실행할 수 없는 프로그램이면 여기서 실패한다.
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        System.setOut(savedOut);
+        System.setIn(savedIn);
+        Files.deleteIfExists(file);
+    }
+
+    // 이미 읽어 들인 프로그램을 실행한다. run()은 실행할 때마다 변수와 스택을 초기화한다.
+    @Benchmark
+    public void run() throws Throwable
+    {
+        RUN.invokeExact(interpreter);
+    }
+
+    // 프로그램 파일을 읽어 들이고 실행한다.
+    @Benchmark
+    public void loadAndRun() throws Throwable
+    {
+        Object sb = NEW_SBASIC.invokeExact(file.toString());
+        RUN.invokeExact(sb);
+    }
+
+    // 프로그램을 임시 파일로 복사한다. SBasic은 줄 끝이 CR LF인 파일만 실행하므로 줄 끝을 맞춘다.
+    static Path copyProgram(String name) throws IOException
+    {
+        String text;
+        try (InputStream in = SBasicBenchmark.class.getResourceAsStream(name + ".BAS"))
+        {
+            if (in == null)
+                throw new FileNotFoundException(name + ".BAS");
+            text = new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+        text = text.replace("\r\n", "\n").replace("\n", "\r\n");
+
+        Path file = Files.createTempFile(name, ".BAS");
+        Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    // read()를 부를 때마다 같은 한 줄을 돌려주는 끝없는 입력.
+    // SBasic은 INPUT마다 새 BufferedReader를 만들기 때문에 한 번에 한 줄보다 많이 주면 나머지는 버려진다.
+    static final class AnswerStream extends InputStream
+    {
+        private final byte[] line;
+
+        AnswerStream(String line)
+        {
+            this.line = line.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public int read()
+        {
+            return line[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            int n = Math.min(len, line.length);
+            System.arraycopy(line, 0, b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    StringParser에서 문자열 n개를 +로 이어 붙이는 식의 벤치마크.
+    이어 붙일 때마다 새 문자열을 만들면 길이에 대해 제곱에 비례하는 시간이 걸린다.
+    hex는 숫자 형식에 나올 수 있는 문자("face")만으로 된 조각들이다. (숫자 형식인지 검사하는 데 문자열을 펼치지 않아야 한다.)
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcatBenchmark
+{
+    static final MethodHandle NEW_PARSER = Targets.constructor("StringParser");
+    static final MethodHandle EVALUATE = Targets.virtual("StringParser", "evaluate", String.class, String.class);
+
+    // 이어 붙이는 문자열의 개수
+    @Param({ "10", "100", "10000" })
+    int length;
+
+    // 조각의 종류
+    @Param({ "html", "hex" })
+    String fragment;
+
+    String expression;
+    Object parser;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            if (i > 0)
+                sb.append(" + ");
+            if (fragment.equals("hex"))
+                sb.append("\"face\"");
+            else
+                sb.append("\"<td>").append(i).append("</td>\"");
+        }
+        expression = sb.toString();
+        parser = NEW_PARSER.invokeExact();
+
+        String s = (String) EVALUATE.invokeExact(parser, expression);
+        String prefix = fragment.equals("hex") ? "faceface" : "<td>0</td><td>1</td>";
+        if (!s.startsWith(prefix) && length > 1)
+            throw new IllegalStateException("Unexpected result " + s);
+    }
+
+    @Benchmark
+    public String concat() throws Throwable
+    {
+        return (String) EVALUATE.invokeExact(parser, expression);
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.lang.invoke.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/*
+    Chapter02 StringParser(MyParser.java)의 벤치마크.
+    문자열 연결이 많은 식과 숫자 계산 식을 evaluate()로 계산한다.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StringParserBenchmark
+{
+    static final MethodHandle NEW_PARSER = Targets.constructor("StringParser");
+    static final MethodHandle EVALUATE = Targets.virtual("StringParser", "evaluate", String.class, String.class);
+
+    // concat: 짧은 문자열 연결, longConcat: 문자열 64개 연결,
+    // mixed: 문자열과 숫자의 연결, numeric: 숫자만 있는 식, variable: 변수에 저장된 문자열 사용
+    @Param({ "concat", "longConcat", "mixed", "numeric", "variable" })
+    String workload;
+
+    String expression;
+    Object parser;
+
+    @Setup
+    public void setup() throws Throwable
+    {
+        parser = NEW_PARSER.invokeExact();
+        // variable 작업에서 사용할 변수
+        String s = (String) EVALUATE.invokeExact(parser, "s = \"hello\"");
+        expression = workload(workload);
+        s = (String) EVALUATE.invokeExact(parser, expression); // 잘못된 식이면 여기서 실패한다.
+    }
+
+    @Benchmark
+    public String evaluate() throws Throwable
+    {
+        return (String) EVALUATE.invokeExact(parser, expression);
+    }
+
+    static String workload(String name)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        switch (name)
+        {
+            case "concat":
+                return "\"Hello\" + \", \" + \"world\"";
+            case "longConcat":
+                for (int i = 0; i < 64; i++)
+                {
+                    if (i > 0)
+                        sb.append(" + ");
+                    sb.append("\"part").append(i).append('"');
+                }
+                return sb.toString();
+            case "mixed":
+                return "\"total: \" + (1.5 * 4 - 2) + \" of \" + 10 / 4";
+            case "numeric":
+                return "(10 - 3) * 2.5 / 7 + (4 - 1) * (8 - 3)";
+            case "variable":
+                return "s + \" \" + s + \" \" + s";
+            default:
+                throw new IllegalArgumentException("Unknown workload " + name);
+        }
+    }
+}